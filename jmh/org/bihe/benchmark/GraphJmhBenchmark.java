@@ -0,0 +1,110 @@
+package org.bihe.benchmark;
+
+import org.bihe.bean.*;
+import org.bihe.controll.BinarySnapshot;
+import org.bihe.controll.MainController;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks of the main queries, changes and snapshot files of Graph on synthetic graphs. It is built
+ * by the jmh profile of Maven (mvn -P jmh package) and run with java -jar target/benchmarks.jar. Samples
+ * are chosen like GraphBenchmark, which runs the full list of cases without JMH
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class GraphJmhBenchmark {
+    private static final int SAMPLES = 256;
+    private static final long SEED = 42;
+
+    @Param({"10000", "1000000"})
+    public long edges;
+
+    private Graph graph;
+    private String[] users;
+    private String[] posts;
+    private String[] follow;
+    private File snapshot;
+    private int i;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        var generator = SocialGraphGenerator.ofEdges(edges, SEED);
+        graph = generator.generate();
+        var random = new Random(SEED);
+        users = new String[SAMPLES];
+        posts = new String[SAMPLES];
+        for (int j = 0; j < SAMPLES; j++) {
+            // half of the samples are popular nodes, because generator gives most edges to small ids
+            users[j] = "u" + ((j % 2 == 0) ? j / 2 % Math.min(100, generator.getUsers()) : random.nextInt(generator.getUsers()));
+            posts[j] = "p" + ((j % 2 == 0) ? j / 2 % Math.min(100, generator.getPosts()) : random.nextInt(generator.getPosts()));
+        }
+        follow = new String[]{users[0], graph.listOfFollowings(users[0]).get(0)};
+        snapshot = Files.createTempFile("graph-jmh", ".snapshot").toFile();
+        BinarySnapshot.write(graph, snapshot.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        snapshot.delete();
+    }
+
+    private String user() {
+        return users[i++ & (SAMPLES - 1)];
+    }
+
+    @Benchmark
+    public List<String> listOfFriends() {
+        return graph.listOfFriends(user());
+    }
+
+    @Benchmark
+    public List<String> listOfLikers() {
+        return graph.listOfLikers(posts[i++ & (SAMPLES - 1)]);
+    }
+
+    @Benchmark
+    public String[] topFollowersOrLikes() {
+        return graph.topFollowersOrLikes(NodeType.user, EdgeType.follow, 3);
+    }
+
+    @Benchmark
+    public List<Recommendation> recommendUsers() {
+        return graph.recommend(user(), NodeType.user, 10);
+    }
+
+    @Benchmark
+    public List<Node> findPathDFS() {
+        return graph.findPathDFS(user(), user(), 6);
+    }
+
+    @Benchmark
+    public boolean removeAndAddEdge() {
+        graph.removeEdge(follow[0], follow[1], EdgeType.follow.name());
+        graph.addEdge(follow[0], follow[1], EdgeType.follow.name());
+        return true;
+    }
+
+    @Benchmark
+    public void writeSnapshot() throws IOException {
+        BinarySnapshot.write(graph, snapshot.getPath());
+    }
+
+    @Benchmark
+    public Graph readSnapshot() throws IOException {
+        MainController.features.clear();
+        Graph loaded = new Graph();
+        BinarySnapshot.read(loaded, snapshot.getPath());
+        return loaded;
+    }
+}
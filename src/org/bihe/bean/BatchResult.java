@@ -0,0 +1,52 @@
+package org.bihe.bean;
+
+/**
+ * Result of each operation of a MutationBatch. An operation is applied or it is rejected with the message
+ * that the method of Graph for this operation would throw
+ */
+public class BatchResult {
+    private final String[] errors;
+    private final int rejected;
+
+    BatchResult(String[] errors) {
+        this.errors = errors;
+        int rejected = 0;
+        for (var error : errors) if (error != null) rejected++;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Return true if the operation is applied
+     * @param i Index of operation
+     * @return true if it is applied
+     */
+    public boolean isApplied(int i) {
+        return errors[i] == null;
+    }
+
+    /**
+     * Gives the message of a rejected operation
+     * @param i Index of operation
+     * @return Message or null if the operation is applied
+     */
+    public String getError(int i) {
+        return errors[i];
+    }
+
+    public int size() {
+        return errors.length;
+    }
+
+    public int getApplied() {
+        return errors.length - rejected;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return "operations: " + errors.length + ", applied: " + getApplied() + ", rejected: " + rejected;
+    }
+}
@@ -0,0 +1,109 @@
+package org.bihe.bean;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Calculates betweenness centrality of all nodes of a snapshot with Brandes algorithm.
+ * Each source runs one BFS on outgoing edges and the dependencies are accumulated back over
+ * incoming edges, so the whole graph costs O(V * E). Sources are split between tasks of a ForkJoinPool
+ */
+@SuppressWarnings("serial")
+public class BetweennessCentrality extends RecursiveTask<double[]> {
+    private static final int SOURCES_PER_TASK = 64;
+
+    private final GraphSnapshot snapshot;
+    private final int from;
+    private final int to;
+
+    /**
+     * BetweennessCentrality Constructor
+     * @param snapshot Snapshot of graph
+     * @param from First source dense id (inclusive)
+     * @param to Last source dense id (exclusive)
+     */
+    private BetweennessCentrality(GraphSnapshot snapshot, int from, int to) {
+        this.snapshot = snapshot;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Calculates betweenness centrality of every node of given snapshot
+     * @param snapshot Snapshot of graph
+     * @param pool Pool that runs the BFS of sources
+     * @return Array that gives betweenness centrality of each dense id
+     */
+    public static double[] calculate(GraphSnapshot snapshot, ForkJoinPool pool) {
+        if (snapshot.nodeCount() == 0) return new double[0];
+        return pool.invoke(new BetweennessCentrality(snapshot, 0, snapshot.nodeCount()));
+    }
+
+    @Override
+    protected double[] compute() {
+        if (to - from > SOURCES_PER_TASK) {
+            int middle = (from + to) >>> 1;
+            var left = new BetweennessCentrality(snapshot, from, middle);
+            left.fork();
+            double[] right = new BetweennessCentrality(snapshot, middle, to).compute();
+            double[] result = left.join();
+            for (int i = 0; i < result.length; i++) result[i] += right[i];
+            return result;
+        }
+        return accumulate();
+    }
+
+    /**
+     * Runs Brandes single source step for each source of this task
+     * @return Sum of dependencies of this task sources for each dense id
+     */
+    private double[] accumulate() {
+        int n = snapshot.nodeCount();
+        int[] offsets = snapshot.offsets();
+        int[] targets = snapshot.targets();
+        int[] inOffsets = snapshot.inOffsets();
+        int[] sources = snapshot.sources();
+
+        double[] centrality = new double[n];
+        int[] order = new int[n];
+        int[] distance = new int[n];
+        double[] sigma = new double[n];
+        double[] delta = new double[n];
+        Arrays.fill(distance, -1);
+
+        for (int s = from; s < to; s++) {
+            int head = 0, tail = 0;
+            distance[s] = 0;
+            sigma[s] = 1;
+            order[tail++] = s;
+            while (head < tail) {
+                int v = order[head++];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    int w = targets[e];
+                    if (distance[w] < 0) {
+                        distance[w] = distance[v] + 1;
+                        order[tail++] = w;
+                    }
+                    if (distance[w] == distance[v] + 1) sigma[w] += sigma[v];
+                }
+            }
+            for (int i = tail - 1; i > 0; i--) {
+                int w = order[i];
+                for (int e = inOffsets[w]; e < inOffsets[w + 1]; e++) {
+                    int v = sources[e];
+                    if (distance[v] >= 0 && distance[v] == distance[w] - 1)
+                        delta[v] += sigma[v] / sigma[w] * (1 + delta[w]);
+                }
+                centrality[w] += delta[w];
+            }
+            for (int i = 0; i < tail; i++) {
+                int v = order[i];
+                distance[v] = -1;
+                sigma[v] = 0;
+                delta[v] = 0;
+            }
+        }
+        return centrality;
+    }
+}
@@ -0,0 +1,574 @@
+package org.bihe.bean;
+
+import org.bihe.exception.ExistElementException;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Graph that can be read and changed by many threads at the same time. It has the same methods as Graph.
+ * <p>
+ * Nodes are guarded by striped read-write locks that are chosen by hash of node id. Adding and removing
+ * edges and features locks just the stripes of their nodes, so writers of different nodes run in parallel.
+ * Queries of one node (friends, followers, followings, posts, suggestions) lock one stripe at a time, so
+ * they see a consistent list of each node. State that is shared between nodes (components, feature index
+ * version and statistics) is changed under one small lock, and counts of leaderboards are collected in their stripe
+ * and moved to the leaderboards when they are read.
+ * <p>
+ * Methods that change the set of nodes or read the whole graph (add and remove node, paths, counts, ...)
+ * take the graph lock exclusively, so they see a consistent graph. Densities are read from statistics
+ * that are counted under the small lock. Long analytics (connected graphs, DFS and betweenness
+ * centrality) pin the current version and run on its snapshot without any lock, so writers are only
+ * stopped while a snapshot of a new version is copied
+ */
+public class ConcurrentGraph extends Graph {
+    private static final EdgeType[] EDGE_TYPES = EdgeType.values();
+
+    private final ReentrantReadWriteLock graphLock;
+    private final Stripe[] stripes;
+    private final Object shared;
+
+    public ConcurrentGraph() {
+        this(Runtime.getRuntime().availableProcessors() * 16);
+    }
+
+    /**
+     * ConcurrentGraph Constructor
+     * @param stripes Number of lock stripes of nodes, it is rounded up to a power of two
+     */
+    public ConcurrentGraph(int stripes) {
+        if (stripes < 1) throw new IllegalArgumentException("Number of stripes must be positive!");
+        this.graphLock = new ReentrantReadWriteLock();
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < this.stripes.length; i++) this.stripes[i] = new Stripe();
+        this.shared = new Object();
+    }
+
+    /*
+    Methods for changing Graph (Add and Remove)
+     */
+    @Override
+    public void addNode(String id, String label, String type) throws ExistElementException {
+        graphLock.writeLock().lock();
+        try {
+            super.addNode(id, label, type);
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String[] addNodes(String[] ids, String[] labels, NodeType[] types, int count) {
+        return exclusive(() -> super.addNodes(ids, labels, types, count));
+    }
+
+    @Override
+    public boolean removeNode(String id) {
+        return exclusive(() -> {
+            flushCounts();
+            return super.removeNode(id);
+        });
+    }
+
+    @Override
+    public int removeNodes(Collection<String> ids) {
+        return exclusive(() -> {
+            flushCounts();
+            return super.removeNodes(ids);
+        });
+    }
+
+    @Override
+    public void addEdge(String from, String to, String type) {
+        writeNodes(from, to, () -> {
+            super.addEdge(from, to, type);
+            return null;
+        });
+    }
+
+    /**
+     * Adds edges of a batch without throwing. Each edge locks just the stripes of its nodes
+     *
+     * @param from  Ids of source nodes
+     * @param to    Ids of destination nodes
+     * @param types Types of edges
+     * @param count Number of rows
+     * @return Array that gives error message of each row, null for added rows
+     */
+    @Override
+    public String[] addEdges(String[] from, String[] to, EdgeType[] types, int count) {
+        String[] errors = new String[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                addEdge(from[i], to[i], types[i].name());
+            } catch (RuntimeException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+        return errors;
+    }
+
+    /**
+     * Applies operations of a batch with the graph lock, so the batch is seen as one change
+     *
+     * @param batch Operations
+     * @return Result of each operation
+     */
+    @Override
+    public BatchResult applyBatch(MutationBatch batch) {
+        return exclusive(() -> super.applyBatch(batch));
+    }
+
+    @Override
+    public boolean removeEdge(String from, String to, String type) {
+        return writeNodes(from, to, () -> super.removeEdge(from, to, type));
+    }
+
+    @Override
+    public void addFeature(String nodeID, int featureID) throws ExistElementException {
+        graphLock.readLock().lock();
+        var lock = stripe(nodeID).lock.writeLock();
+        lock.lock();
+        try {
+            super.addFeature(nodeID, featureID);
+        } finally {
+            lock.unlock();
+            graphLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean removeFeature(String nodeID, int featureID) {
+        return writeNodes(nodeID, nodeID, () -> super.removeFeature(nodeID, featureID));
+    }
+
+    @Override
+    public boolean removeFeatureFromAllNodes(int featureID) {
+        return exclusive(() -> super.removeFeatureFromAllNodes(featureID));
+    }
+
+    //-----------------------------Shared state of nodes-----------------------------------
+
+    /**
+     * Collects count in stripe of the node. The caller holds the write lock of this stripe
+     */
+    @Override
+    void countEdge(Node to, EdgeType type, int delta) {
+        stripe(to.getId()).counts.computeIfAbsent(to, k -> new int[EDGE_TYPES.length])[type.ordinal()] += delta;
+    }
+
+    @Override
+    void edgeAdded(int from, int to) {
+        synchronized (shared) {
+            super.edgeAdded(from, to);
+        }
+    }
+
+    @Override
+    void edgeRemoved() {
+        synchronized (shared) {
+            super.edgeRemoved();
+        }
+    }
+
+    @Override
+    void statisticsChanged(EdgeType type, int edges, int userRelations, int postRelations) {
+        synchronized (shared) {
+            super.statisticsChanged(type, edges, userRelations, postRelations);
+        }
+    }
+
+    @Override
+    void featureAdded(String nodeID, Feature feature) {
+        synchronized (shared) {
+            super.featureAdded(nodeID, feature);
+        }
+    }
+
+    @Override
+    void featureRemoved(String nodeID, Feature feature) {
+        synchronized (shared) {
+            super.featureRemoved(nodeID, feature);
+        }
+    }
+
+    /**
+     * Moves counts that are collected in stripes to leaderboards
+     */
+    private void flushCounts() {
+        for (var stripe : stripes) {
+            var lock = stripe.lock.writeLock();
+            lock.lock();
+            try {
+                if (stripe.counts.isEmpty()) continue;
+                synchronized (shared) {
+                    for (var entry : stripe.counts.entrySet()) {
+                        int[] deltas = entry.getValue();
+                        for (int t = 0; t < deltas.length; t++) {
+                            if (deltas[t] != 0) super.countEdge(entry.getKey(), EDGE_TYPES[t], deltas[t]);
+                        }
+                    }
+                }
+                stripe.counts.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    //-----------------------------Methods for 1,2,3,4 questions---------------------------
+
+    @Override
+    public HashMap<String, Integer> calculateFollowersOrLikes(NodeType nodeType, EdgeType edgeType) {
+        return exclusive(() -> super.calculateFollowersOrLikes(nodeType, edgeType));
+    }
+
+    @Override
+    public HashMap<String, Integer> calculateHashtagsOrMentions(FeatureType featureType) {
+        return exclusive(() -> super.calculateHashtagsOrMentions(featureType));
+    }
+
+    @Override
+    public String[] topFollowersOrLikes(NodeType nodeType, EdgeType edgeType, int k) {
+        return shared(() -> {
+            flushCounts();
+            synchronized (shared) {
+                return super.topFollowersOrLikes(nodeType, edgeType, k);
+            }
+        });
+    }
+
+    @Override
+    public String[] topHashtagsOrMentions(FeatureType featureType, int k) {
+        return shared(() -> {
+            synchronized (shared) {
+                return super.topHashtagsOrMentions(featureType, k);
+            }
+        });
+    }
+
+    //-----------------------------Methods for searching features--------------------------
+
+    @Override
+    public List<String> listOfNodesWithFeature(int featureID) {
+        return shared(() -> {
+            synchronized (shared) {
+                return super.listOfNodesWithFeature(featureID);
+            }
+        });
+    }
+
+    @Override
+    public int numberOfNodesWithFeature(int featureID) {
+        return shared(() -> {
+            synchronized (shared) {
+                return super.numberOfNodesWithFeature(featureID);
+            }
+        });
+    }
+
+    @Override
+    public HashMap<String, Integer> coOccurringFeatures(int featureID, FeatureType featureType) {
+        return exclusive(() -> super.coOccurringFeatures(featureID, featureType));
+    }
+
+    //-------------------------Methods of 5 and 6 questions--------------------
+
+    /**
+     * Gets id of user and return lists of friends. Followings of user are read under stripe of the user
+     * and then each following is checked under its own stripe
+     *
+     * @param userID User id
+     * @return List of friends id
+     */
+    @Override
+    public List<String> listOfFriends(String userID) {
+        return shared(() -> {
+            var followings = listOfFollowings(userID);
+            LinkedList<String> friends = new LinkedList<>();
+            for (var following : followings) {
+                if (readNode(following, () -> hasOutgoingEdge(following, userID, EdgeType.follow)))
+                    friends.add(following);
+            }
+            return friends;
+        });
+    }
+
+    @Override
+    public List<String> listOfFollowers(String userID) {
+        return readNode(userID, () -> super.listOfFollowers(userID));
+    }
+
+    @Override
+    public List<String> listOfLikers(String nodeID) {
+        return readNode(nodeID, () -> super.listOfLikers(nodeID));
+    }
+
+    @Override
+    public List<String> listOfFollowings(String userID) {
+        return readNode(userID, () -> super.listOfFollowings(userID));
+    }
+
+    @Override
+    public List<String> listOfPosts(String userID) {
+        return readNode(userID, () -> super.listOfPosts(userID));
+    }
+
+    /**
+     * Gives suggested item. Lists of friends, followings and posts are read node by node, so writers are
+     * not stopped
+     *
+     * @param userID id of user
+     * @param type   Type of node
+     * @return Suggested item
+     */
+    @Override
+    public String suggestedItem(String userID, NodeType type) {
+        return shared(() -> super.suggestedItem(userID, type));
+    }
+
+    //----------------------------Methods of Question 7------------------------
+
+    @Override
+    public int numberOfAllPosts() {
+        return shared(() -> {
+            synchronized (shared) {
+                return super.numberOfAllPosts();
+            }
+        });
+    }
+
+    @Override
+    public LinkedList<Integer> numbersOfRelationsBetweenEachUserWithOtherUsers() {
+        return exclusive(super::numbersOfRelationsBetweenEachUserWithOtherUsers);
+    }
+
+    @Override
+    public LinkedList<Integer> numbersOfRelationsBetweenEachUserWithPosts() {
+        return exclusive(super::numbersOfRelationsBetweenEachUserWithPosts);
+    }
+
+    @Override
+    public float densityOfUsersPercent() {
+        return statistics().densityOfUsersPercent();
+    }
+
+    @Override
+    public float densityJustBetweenUsersAndPostsPercent() {
+        return statistics().densityJustBetweenUsersAndPostsPercent();
+    }
+
+    @Override
+    public float densityTotalBetweenUsersAndPostsPercent() {
+        return statistics().densityTotalBetweenUsersAndPostsPercent();
+    }
+
+    @Override
+    public GraphStatistics statistics() {
+        return shared(() -> {
+            synchronized (shared) {
+                return super.statistics();
+            }
+        });
+    }
+
+    //----------------------------Paths and connected graphs------------------------
+
+    @Override
+    public Set<Node> findPath(String nodeID1, String nodeID2, byte in) {
+        return exclusive(() -> super.findPath(nodeID1, nodeID2, in));
+    }
+
+    @Override
+    public List<Node> findPathDFS(String nodeID1, String nodeID2, int maxDepth) {
+        return exclusive(() -> super.findPathDFS(nodeID1, nodeID2, maxDepth));
+    }
+
+    @Override
+    public Set<Node> DFS(String root) {
+        try (var version = pin()) {
+            return version.getSnapshot().DFS(root);
+        }
+    }
+
+    @Override
+    public Set<Set<Node>> connectedGraphs() {
+        try (var version = pin()) {
+            return version.getSnapshot().connectedGraphs();
+        }
+    }
+
+    @Override
+    public Set<Node> mostNumberOfUsersConnectedGraph() {
+        return exclusive(super::mostNumberOfUsersConnectedGraph);
+    }
+
+    @Override
+    public Set<Node> getShortestPath(String first, String second) {
+        return exclusive(() -> super.getShortestPath(first, second));
+    }
+
+    @Override
+    public HashMap<Pair<Node, Node>, Set<Node>> getShortestPathsForPairNodesOfGraph() {
+        return exclusive(super::getShortestPathsForPairNodesOfGraph);
+    }
+
+    @Override
+    public HashMap<Pair<Node, Node>, Set<Node>> getShortestPathsForPairNodesOfConnectedGraph() {
+        return exclusive(super::getShortestPathsForPairNodesOfConnectedGraph);
+    }
+
+    /**
+     * Gets id of user and calculate betweenness centrality of this user on the pinned current version
+     *
+     * @param userID id of user
+     * @return betweenness centrality
+     */
+    @Override
+    public double betweennessCentrality(String userID) {
+        try (var version = pin()) {
+            var snapshot = version.getSnapshot();
+            int i = snapshot.indexOf(userID);
+            if (i < 0) throw new NoSuchElementException("This node not be found!");
+            if (!snapshot.getNode(i).getType().equals(NodeType.user))
+                throw new IllegalArgumentException("This node type is not user!");
+            return snapshot.betweennessCentrality()[i];
+        }
+    }
+
+    /**
+     * Gives snapshot of current version. If it is already copied, writers are not stopped
+     *
+     * @return Snapshot of this graph
+     */
+    @Override
+    public GraphSnapshot snapshot() {
+        var cached = shared(() -> {
+            synchronized (shared) {
+                return cachedSnapshot();
+            }
+        });
+        return (cached != null) ? cached : exclusive(super::snapshot);
+    }
+
+    @Override
+    public String toString() {
+        return exclusive(super::toString);
+    }
+
+    @Override
+    public String adjacencyListToString() {
+        return exclusive(super::adjacencyListToString);
+    }
+
+    //--------------------------------Getters----------------------------------
+
+    @Override
+    public HashMap<String, Node> getNodes() {
+        return exclusive(super::getNodes);
+    }
+
+    @Override
+    public List<Edge> getEdges(String nodeID) {
+        return readNode(nodeID, () -> super.getEdges(nodeID));
+    }
+
+    @Override
+    public HashMap<Node, List<Edge>> getAdjacencyList() {
+        return exclusive(super::getAdjacencyList);
+    }
+
+    /**
+     * Gives a copy of features of posts and messages, because lists of features change while they are read
+     *
+     * @return Hashtable -> key: post or message, value: list of its features
+     */
+    @Override
+    public HashMap<Node, List<Feature>> getFeatures() {
+        return exclusive(() -> {
+            HashMap<Node, List<Feature>> features = new HashMap<>();
+            for (var entry : super.getFeatures().entrySet()) features.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+            return features;
+        });
+    }
+
+    //--------------------------------Locks------------------------------------
+
+    private Stripe stripe(String nodeID) {
+        return stripes[stripeIndex(nodeID)];
+    }
+
+    private int stripeIndex(String nodeID) {
+        int h = nodeID.hashCode();
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    /**
+     * Runs given action while no other thread reads or changes the graph
+     */
+    private <T> T exclusive(Supplier<T> action) {
+        graphLock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs given action while set of nodes does not change. Lists of nodes can change
+     */
+    private <T> T shared(Supplier<T> action) {
+        graphLock.readLock().lock();
+        try {
+            return action.get();
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs given action while lists of given node do not change
+     */
+    private <T> T readNode(String nodeID, Supplier<T> action) {
+        graphLock.readLock().lock();
+        var lock = stripe(nodeID).lock.readLock();
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+            graphLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs given action while only this thread changes lists of given nodes. Stripes are locked in order
+     * of their index, so two writers cannot wait for each other
+     */
+    private <T> T writeNodes(String first, String second, Supplier<T> action) {
+        graphLock.readLock().lock();
+        int i = stripeIndex(first);
+        int j = stripeIndex(second);
+        var a = stripes[Math.min(i, j)];
+        var b = stripes[Math.max(i, j)];
+        a.lock.writeLock().lock();
+        if (b != a) b.lock.writeLock().lock();
+        try {
+            return action.get();
+        } finally {
+            if (b != a) b.lock.writeLock().unlock();
+            a.lock.writeLock().unlock();
+            graphLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Lock of a group of nodes and the counts of leaderboards that its nodes got since the last flush
+     */
+    private static class Stripe {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final HashMap<Node, int[]> counts = new HashMap<>();
+    }
+}
@@ -0,0 +1,161 @@
+package org.bihe.bean;
+
+import java.util.*;
+
+/**
+ * Weakly connected components of a graph kept in a union-find (disjoint set) with path compression
+ * and union by rank over node handles of the graph. Adding nodes and edges updates it in place,
+ * removing them marks it dirty and it is rebuilt from the graph on the next query. Members of each
+ * component are linked in a circular list and number of users of each component is kept on its root
+ */
+public class ConnectedComponents {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Graph graph;
+    private int[] parent;
+    private int[] rank;
+    private int[] next;
+    private int[] users;
+    private int maxUsersRoot;
+    private boolean dirty;
+
+    /**
+     * ConnectedComponents Constructor
+     * @param graph Graph that its components are kept
+     */
+    ConnectedComponents(Graph graph) {
+        this.graph = graph;
+        clear(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Adds a node as a component with just this node
+     * @param handle Handle of new node
+     */
+    void add(int handle) {
+        if (dirty) return;
+        if (handle >= parent.length) grow(handle + 1);
+        parent[handle] = handle;
+        rank[handle] = 0;
+        next[handle] = handle;
+        users[handle] = graph.nodeAt(handle).getType().equals(NodeType.user) ? 1 : 0;
+        if (maxUsersRoot < 0 && users[handle] > 0) maxUsersRoot = handle;
+    }
+
+    /**
+     * Merges components of two nodes that an edge is added between them
+     * @param from Handle of source node
+     * @param to Handle of destination node
+     */
+    void union(int from, int to) {
+        if (dirty) return;
+        int a = find(from);
+        int b = find(to);
+        if (a == b) return;
+        if (rank[a] < rank[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        parent[b] = a;
+        if (rank[a] == rank[b]) rank[a]++;
+        users[a] += users[b];
+        int t = next[a];
+        next[a] = next[b];
+        next[b] = t;
+        if (maxUsersRoot == b || (maxUsersRoot >= 0 && users[a] > users[maxUsersRoot])) maxUsersRoot = a;
+        else if (maxUsersRoot < 0 && users[a] > 0) maxUsersRoot = a;
+    }
+
+    /**
+     * Marks components as dirty after removing a node or an edge, so they are rebuilt on next query
+     */
+    void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Calculates all connected graphs
+     * @return Set of set of nodes that are connected
+     */
+    public Set<Set<Node>> connectedGraphs() {
+        rebuildIfDirty();
+        HashSet<Set<Node>> connectedGraphs = new HashSet<>();
+        for (int i = 0; i < graph.capacity(); i++) {
+            if (graph.nodeAt(i) != null && parent[i] == i) connectedGraphs.add(members(i));
+        }
+        return connectedGraphs;
+    }
+
+    /**
+     * Gives the connected graph that has most number of users
+     * @return Set of nodes of this connected graph
+     */
+    public Set<Node> mostNumberOfUsersConnectedGraph() {
+        rebuildIfDirty();
+        if (maxUsersRoot < 0) return new HashSet<>();
+        return members(maxUsersRoot);
+    }
+
+    /**
+     * Gives nodes of component by walking its circular list
+     * @param root Root of component
+     * @return Set of nodes of this component
+     */
+    private Set<Node> members(int root) {
+        HashSet<Node> members = new HashSet<>();
+        int i = root;
+        do {
+            members.add(graph.nodeAt(i));
+            i = next[i];
+        } while (i != root);
+        return members;
+    }
+
+    /**
+     * Gives root of given element and compresses the path to it
+     * @param i element
+     * @return root of element
+     */
+    private int find(int i) {
+        int root = i;
+        while (parent[root] != root) root = parent[root];
+        while (parent[i] != root) {
+            int up = parent[i];
+            parent[i] = root;
+            i = up;
+        }
+        return root;
+    }
+
+    private void rebuildIfDirty() {
+        if (!dirty) return;
+        dirty = false;
+        int capacity = graph.capacity();
+        clear(Math.max(INITIAL_CAPACITY, capacity));
+        for (int h = 0; h < capacity; h++) {
+            if (graph.nodeAt(h) != null) add(h);
+        }
+        for (int h = 0; h < capacity; h++) {
+            if (graph.nodeAt(h) == null) continue;
+            var out = graph.outgoing(h);
+            for (int i = 0; i < out.size(); i++) union(h, out.node(i));
+        }
+    }
+
+    private void clear(int capacity) {
+        parent = new int[capacity];
+        rank = new int[capacity];
+        next = new int[capacity];
+        users = new int[capacity];
+        maxUsersRoot = -1;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, parent.length * 2);
+        parent = Arrays.copyOf(parent, capacity);
+        rank = Arrays.copyOf(rank, capacity);
+        next = Arrays.copyOf(next, capacity);
+        users = Arrays.copyOf(users, capacity);
+    }
+}
@@ -0,0 +1,8 @@
+package org.bihe.bean;
+
+/**
+ * Stores direction that edges are followed in a traversal
+ */
+public enum Direction {
+    OUTGOING, INCOMING, BOTH
+}
@@ -0,0 +1,104 @@
+package org.bihe.bean;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of the edges of one node. The other end of each edge is stored as an int handle and
+ * its type as a byte in two parallel arrays, so there is no Edge object and no boxing per edge
+ */
+class EdgeList {
+    private static final int[] NO_NODES = new int[0];
+    private static final byte[] NO_TYPES = new byte[0];
+    private static final EdgeType[] TYPES = EdgeType.values();
+
+    private int[] nodes;
+    private byte[] types;
+    private int size;
+
+    EdgeList() {
+        nodes = NO_NODES;
+        types = NO_TYPES;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int node(int i) {
+        return nodes[i];
+    }
+
+    EdgeType type(int i) {
+        return TYPES[types[i]];
+    }
+
+    /**
+     * Appends an edge
+     * @param node Handle of other end of edge
+     * @param type Type of edge
+     */
+    void add(int node, EdgeType type) {
+        if (size == nodes.length) {
+            int capacity = Math.max(4, size + (size >> 1));
+            nodes = Arrays.copyOf(nodes, capacity);
+            types = Arrays.copyOf(types, capacity);
+        }
+        nodes[size] = node;
+        types[size] = (byte) type.ordinal();
+        size++;
+    }
+
+    /**
+     * Return true if this list has an edge with given handle and type
+     * @param node Handle of other end of edge
+     * @param type Type of edge
+     * @return true if the edge exists
+     */
+    boolean contains(int node, EdgeType type) {
+        return indexOf(node, (byte) type.ordinal()) >= 0;
+    }
+
+    /**
+     * Removes the edge with given handle and type and keeps order of other edges
+     * @param node Handle of other end of edge
+     * @param type Type of edge
+     * @return true if the edge is removed
+     */
+    boolean remove(int node, EdgeType type) {
+        int i = indexOf(node, (byte) type.ordinal());
+        if (i < 0) return false;
+        System.arraycopy(nodes, i + 1, nodes, i, size - i - 1);
+        System.arraycopy(types, i + 1, types, i, size - i - 1);
+        size--;
+        return true;
+    }
+
+    /**
+     * Changes handles of edges after nodes of graph are moved and shrinks arrays to number of edges
+     * @param moved New handle of each old handle
+     */
+    void compact(int[] moved) {
+        for (int i = 0; i < size; i++) nodes[i] = moved[nodes[i]];
+        if (size < nodes.length) {
+            nodes = (size == 0) ? NO_NODES : Arrays.copyOf(nodes, size);
+            types = (size == 0) ? NO_TYPES : Arrays.copyOf(types, size);
+        }
+    }
+
+    /**
+     * Counts the edges of given type
+     * @param type Type of edge
+     * @return Number of edges
+     */
+    int count(EdgeType type) {
+        byte t = (byte) type.ordinal();
+        int count = 0;
+        for (int i = 0; i < size; i++) if (types[i] == t) count++;
+        return count;
+    }
+
+    private int indexOf(int node, byte type) {
+        for (int i = 0; i < size; i++) if (nodes[i] == node && types[i] == type) return i;
+        return -1;
+    }
+}
@@ -0,0 +1,53 @@
+package org.bihe.bean;
+
+import java.util.Arrays;
+
+/**
+ * Marks the edges of one source node by handle of their destination, so a batch that adds many edges of
+ * the same source checks each of them in O(1) and not by scanning the edge list. Marks of a source are
+ * cleared by starting the next source with a new number, so arrays are not cleared between sources
+ */
+class EdgeMarks {
+    private int[] stamps;
+    private byte[] types;
+    private int stamp;
+
+    EdgeMarks(int capacity) {
+        stamps = new int[capacity];
+        types = new byte[capacity];
+    }
+
+    /**
+     * Forgets marks of the previous source and marks the edges of a new source
+     * @param edges Outgoing edges of source
+     * @param capacity Number of handles of graph
+     */
+    void mark(EdgeList edges, int capacity) {
+        if (capacity > stamps.length) {
+            stamps = new int[Math.max(capacity, stamps.length + (stamps.length >> 1))];
+            types = new byte[stamps.length];
+            stamp = 0;
+        } else if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(stamps, 0);
+            stamp = 0;
+        }
+        stamp++;
+        for (int i = 0; i < edges.size(); i++) add(edges.node(i), edges.type(i));
+    }
+
+    boolean contains(int node, EdgeType type) {
+        return stamps[node] == stamp && (types[node] & (1 << type.ordinal())) != 0;
+    }
+
+    void add(int node, EdgeType type) {
+        if (stamps[node] != stamp) {
+            stamps[node] = stamp;
+            types[node] = 0;
+        }
+        types[node] |= (byte) (1 << type.ordinal());
+    }
+
+    void remove(int node, EdgeType type) {
+        if (stamps[node] == stamp) types[node] &= (byte) ~(1 << type.ordinal());
+    }
+}
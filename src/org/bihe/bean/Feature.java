@@ -45,4 +45,9 @@ public class Feature {
         Feature feature = (Feature) o;
         return id == feature.id;
     }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(id);
+    }
 }
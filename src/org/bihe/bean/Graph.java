@@ -4,17 +4,52 @@ import org.bihe.controll.MainController;
 import org.bihe.exception.ExistElementException;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ObjIntConsumer;
 
 public class Graph {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int SUGGESTION_CACHE_CAPACITY = 10_000;
+    private static final int MARK_THRESHOLD = 8;
+    private static final EdgeType[] EDGE_TYPES = EdgeType.values();
 
-    private final HashMap<String, Node> nodes;
-    private final HashMap<Node, List<Edge>> adjacencyList;
+    private final HashMap<String, Integer> handles;
+    private Node[] nodeAt;
+    private EdgeList[] outgoing;
+    private EdgeList[] incoming;
+    private int size;
     private final HashMap<Node, List<Feature>> features;
+    private final HashMap<Integer, Set<String>> featurePostings;
+    private final ConnectedComponents components;
+    private final EnumMap<NodeType, EnumMap<EdgeType, Leaderboard<Node>>> nodeBoards;
+    private final EnumMap<FeatureType, Leaderboard<Feature>> featureBoards;
+    private int modCount;
+    private volatile GraphSnapshot snapshot;
+    private final TreeMap<Integer, Integer> pinnedEpochs;
+    private final RecommendationCache suggestions;
+    private final GraphStatistics statistics;
+    private PathFinder pathFinder;
+    private EdgeMarks edgeMarks;
 
     public Graph() {
-        nodes = new HashMap<>();
-        adjacencyList = new HashMap<>();
+        handles = new HashMap<>();
+        nodeAt = new Node[INITIAL_CAPACITY];
+        outgoing = new EdgeList[INITIAL_CAPACITY];
+        incoming = new EdgeList[INITIAL_CAPACITY];
         features = new HashMap<>();
+        featurePostings = new HashMap<>();
+        pinnedEpochs = new TreeMap<>();
+        suggestions = new RecommendationCache(SUGGESTION_CACHE_CAPACITY);
+        statistics = new GraphStatistics();
+        components = new ConnectedComponents(this);
+        nodeBoards = new EnumMap<>(NodeType.class);
+        for (var nodeType : NodeType.values()) {
+            var boards = new EnumMap<EdgeType, Leaderboard<Node>>(EdgeType.class);
+            for (var edgeType : EdgeType.values()) boards.put(edgeType, new Leaderboard<>());
+            nodeBoards.put(nodeType, boards);
+        }
+        featureBoards = new EnumMap<>(FeatureType.class);
+        for (var type : FeatureType.values()) featureBoards.put(type, new Leaderboard<>());
     }
 
     /*
@@ -22,42 +57,334 @@ public class Graph {
      */
     public void addNode(String id, String label, String type) throws ExistElementException {
         var node = new Node(id, label, NodeType.valueOf(type));
-        if (nodes.putIfAbsent(id, node) != null) throw new ExistElementException("This id exists!");
-        if ((NodeType.valueOf(type).equals(NodeType.user))) {
-            adjacencyList.putIfAbsent(node, new LinkedList<>());
-        } else {
-            adjacencyList.putIfAbsent(node, new LinkedList<>());
-            features.putIfAbsent(node, new LinkedList<>());
+        if (handles.putIfAbsent(id, size) != null) throw new ExistElementException("This id exists!");
+        insertNode(node);
+    }
+
+    /**
+     * Stores a node that its id is mapped to the next handle
+     *
+     * @param node New node
+     */
+    private void insertNode(Node node) {
+        if (size == nodeAt.length) {
+            int capacity = nodeAt.length * 2;
+            nodeAt = Arrays.copyOf(nodeAt, capacity);
+            outgoing = Arrays.copyOf(outgoing, capacity);
+            incoming = Arrays.copyOf(incoming, capacity);
         }
+        int handle = size++;
+        nodeAt[handle] = node;
+        outgoing[handle] = new EdgeList();
+        incoming[handle] = new EdgeList();
+        if (!node.getType().equals(NodeType.user)) features.putIfAbsent(node, new LinkedList<>());
+        components.add(handle);
+        statistics.addNodes(node.getType(), 1);
+        modCount++;
     }
 
+    /**
+     * Removes a node with its edges and features. Only edges of the node are touched: its incoming edges
+     * are removed from outgoing lists of their sources and its outgoing edges from incoming lists of their
+     * destinations, so the cost depends on degree of the node and not on size of graph
+     *
+     * @param id Id of node
+     * @return true if the node is removed, false if it not be found
+     */
     public boolean removeNode(String id) {
-        Node node = nodes.get(id);
-        if (node == null) return false;
+        Integer handle = handles.get(id);
+        if (handle == null) return false;
+        deleteNode(handle);
+        return true;
+    }
 
-        for (var n : adjacencyList.keySet()) {
-            while (true) {
-                if (!adjacencyList.get(n).removeIf(edge -> edge.getDestination().equals(node))) break;
-            }
+    /**
+     * Removes nodes of given ids and then compacts storage, so handles of removed nodes are given back.
+     * Ids that not be found are ignored
+     *
+     * @param ids Ids of nodes
+     * @return Number of removed nodes
+     */
+    public int removeNodes(Collection<String> ids) {
+        int removed = 0;
+        for (var id : ids) {
+            Integer handle = handles.get(id);
+            if (handle == null) continue;
+            deleteNode(handle);
+            removed++;
+        }
+        if (removed > 0) compact();
+        return removed;
+    }
+
+    /**
+     * Removes node of given handle. Its handle stays empty until storage is compacted
+     *
+     * @param handle Handle of node
+     */
+    private void deleteNode(int handle) {
+        Node node = nodeAt[handle];
+        String id = node.getId();
 
+        // ConcurrentGraph removes nodes alone, so suggestions can be invalidated before edges are removed
+        suggestions.changed();
+        if (!suggestions.isEmpty()) {
+            invalidateSuggestionsOf(handle);
+            for (int i = 0; i < incoming[handle].size(); i++) invalidateSuggestionsOf(incoming[handle].node(i));
+            for (int i = 0; i < outgoing[handle].size(); i++) invalidateSuggestionsOf(outgoing[handle].node(i));
         }
-        adjacencyList.remove(node);
-        nodes.remove(id);
-        return true;
+        for (var type : EdgeType.values()) nodeBoards.get(node.getType()).get(type).remove(node);
+        var nodeFeatures = features.remove(node);
+        if (nodeFeatures != null) {
+            for (var feature : nodeFeatures) featureRemoved(id, feature);
+        }
+        removeStatistics(handle);
+        var in = incoming[handle];
+        for (int i = 0; i < in.size(); i++) outgoing[in.node(i)].remove(handle, in.type(i));
+        var out = outgoing[handle];
+        for (int i = 0; i < out.size(); i++) {
+            int target = out.node(i);
+            incoming[target].remove(handle, out.type(i));
+            countEdge(nodeAt[target], out.type(i), -1);
+        }
+        nodeAt[handle] = null;
+        outgoing[handle] = null;
+        incoming[handle] = null;
+        handles.remove(id);
+        components.invalidate();
+        modCount++;
+    }
+
+    /**
+     * Moves nodes to the first handles, so there is no empty handle between them, and shrinks arrays and
+     * lists of edges to their sizes
+     */
+    private void compact() {
+        int[] moved = new int[size];
+        int count = 0;
+        for (int h = 0; h < size; h++) {
+            if (nodeAt[h] == null) continue;
+            moved[h] = count;
+            nodeAt[count] = nodeAt[h];
+            outgoing[count] = outgoing[h];
+            incoming[count] = incoming[h];
+            handles.put(nodeAt[count].getId(), count);
+            count++;
+        }
+        int capacity = Math.max(INITIAL_CAPACITY, count);
+        nodeAt = Arrays.copyOf(nodeAt, capacity);
+        outgoing = Arrays.copyOf(outgoing, capacity);
+        incoming = Arrays.copyOf(incoming, capacity);
+        Arrays.fill(nodeAt, count, capacity, null);
+        Arrays.fill(outgoing, count, capacity, null);
+        Arrays.fill(incoming, count, capacity, null);
+        for (int h = 0; h < count; h++) {
+            outgoing[h].compact(moved);
+            incoming[h].compact(moved);
+        }
+        size = count;
+        pathFinder = null;
+        components.invalidate();
+        modCount++;
     }
 
     public void addEdge(String from, String to, String type) {
-        var fromNode = nodes.get(from);
-        if (fromNode == null) throw new NoSuchElementException("Your source node not be found!");
+        Integer fromHandle = handles.get(from);
+        if (fromHandle == null) throw new NoSuchElementException("Your source node not be found!");
 
-        var toNode = nodes.get(to);
-        if (toNode == null) throw new NoSuchElementException("Your destination node not be found!");
+        Integer toHandle = handles.get(to);
+        if (toHandle == null) throw new NoSuchElementException("Your destination node not be found!");
 
-        if (!validateEdge(fromNode, toNode, EdgeType.valueOf(type)))
+        var edgeType = EdgeType.valueOf(type);
+        if (!validateEdge(nodeAt[fromHandle], nodeAt[toHandle], edgeType))
             throw new IllegalStateException("You cannot set this type between these nodes!");
 
-        var edge = new Edge(toNode, EdgeType.valueOf(type));
-        adjacencyList.get(fromNode).add(edge);
+        insertEdge(fromHandle, toHandle, edgeType);
+    }
+
+    /**
+     * Appends a validated edge if it does not exist
+     *
+     * @param from Handle of source node
+     * @param to   Handle of destination node
+     * @param type Type of edge
+     */
+    private void insertEdge(int from, int to, EdgeType type) {
+        if (containsEdge(from, to, type)) return;
+        outgoing[from].add(to, type);
+        incoming[to].add(from, type);
+        countEdge(nodeAt[to], type, 1);
+        edgeAdded(from, to);
+        countRelation(from, to, type, 1);
+        invalidateSuggestions(from, to);
+    }
+
+    /**
+     * Adds nodes of a batch without throwing. Each row is checked and the rows that cannot be added get
+     * the message that addNode would throw
+     *
+     * @param ids    Ids of nodes
+     * @param labels Labels of nodes
+     * @param types  Types of nodes
+     * @param count  Number of rows
+     * @return Array that gives error message of each row, null for added rows
+     */
+    public String[] addNodes(String[] ids, String[] labels, NodeType[] types, int count) {
+        String[] errors = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (handles.putIfAbsent(ids[i], size) != null) errors[i] = "This id exists!";
+            else insertNode(new Node(ids[i], labels[i], types[i]));
+        }
+        return errors;
+    }
+
+    /**
+     * Adds edges of a batch without throwing. Edges are applied like the edges of applyBatch, so the rows
+     * that cannot be added get the message that addEdge would throw
+     *
+     * @param from  Ids of source nodes
+     * @param to    Ids of destination nodes
+     * @param types Types of edges
+     * @param count Number of rows
+     * @return Array that gives error message of each row, null for added rows
+     */
+    public String[] addEdges(String[] from, String[] to, EdgeType[] types, int count) {
+        var batch = new MutationBatch(count);
+        for (int i = 0; i < count; i++) batch.addEdge(from[i], to[i], types[i]);
+        String[] errors = new String[count];
+        applyEdges(batch, errors);
+        return errors;
+    }
+
+    /**
+     * Applies operations of a batch without throwing and gives result of each operation. Nodes are added
+     * first, then edges are added and removed grouped by source node, and then features are added and
+     * removed. Handles of all edges are looked up before any edge is changed, edges of a source that has
+     * many edges in the batch are checked against marks of its edge list, and counts of leaderboards and
+     * statistics are summed and changed once per node and type. Rejected operations get the message that
+     * the method of this operation would throw
+     *
+     * @param batch Operations
+     * @return Result of each operation
+     */
+    public BatchResult applyBatch(MutationBatch batch) {
+        int count = batch.size();
+        String[] errors = new String[count];
+        for (int i = 0; i < count; i++) {
+            if (batch.operation(i) != MutationBatch.ADD_NODE) continue;
+            if (handles.putIfAbsent(batch.first(i), size) != null) errors[i] = "This id exists!";
+            else insertNode(new Node(batch.first(i), batch.second(i), batch.nodeType(i)));
+        }
+        applyEdges(batch, errors);
+        for (int i = 0; i < count; i++) {
+            byte operation = batch.operation(i);
+            try {
+                if (operation == MutationBatch.ADD_FEATURE) addFeature(batch.first(i), batch.featureID(i));
+                else if (operation == MutationBatch.REMOVE_FEATURE && !removeFeature(batch.first(i), batch.featureID(i)))
+                    errors[i] = "Your node or feature not be found!";
+            } catch (ExistElementException | RuntimeException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+        return new BatchResult(errors);
+    }
+
+    /**
+     * Adds and removes edges of a batch. Valid edges are sorted by handle of source node and index in the
+     * batch, so edges of one source are applied together and in their order
+     *
+     * @param batch  Operations
+     * @param errors Error message of each operation that is set for rejected edges
+     */
+    private void applyEdges(MutationBatch batch, String[] errors) {
+        int count = batch.size();
+        long[] order = new long[count];
+        int[] toHandles = new int[count];
+        int edges = 0;
+        for (int i = 0; i < count; i++) {
+            byte operation = batch.operation(i);
+            if (operation != MutationBatch.ADD_EDGE && operation != MutationBatch.REMOVE_EDGE) continue;
+            int from = handles.getOrDefault(batch.first(i), -1);
+            int to = handles.getOrDefault(batch.second(i), -1);
+            if (operation == MutationBatch.REMOVE_EDGE) {
+                if (from < 0 || to < 0) errors[i] = "This edge not be found!";
+            } else if (from < 0) errors[i] = "Your source node not be found!";
+            else if (to < 0) errors[i] = "Your destination node not be found!";
+            else if (!validateEdge(nodeAt[from], nodeAt[to], batch.edgeType(i)))
+                errors[i] = "You cannot set this type between these nodes!";
+            if (errors[i] != null) continue;
+            toHandles[i] = to;
+            order[edges++] = (long) from << 32 | i;
+        }
+        if (edges == 0) return;
+        Arrays.sort(order, 0, edges);
+
+        // changed counts of leaderboards are collected as (destination, type, sign) keys and summed after the loop
+        long[] changes = new long[edges];
+        int changed = 0;
+        int[] edgeDeltas = new int[EDGE_TYPES.length];
+        int[] userRelations = new int[EDGE_TYPES.length];
+        int[] postRelations = new int[EDGE_TYPES.length];
+        for (int start = 0, end; start < edges; start = end) {
+            int from = (int) (order[start] >>> 32);
+            end = start + 1;
+            while (end < edges && (int) (order[end] >>> 32) == from) end++;
+            EdgeMarks marks = null;
+            if (end - start >= MARK_THRESHOLD) {
+                if (edgeMarks == null) edgeMarks = new EdgeMarks(size);
+                marks = edgeMarks;
+                marks.mark(outgoing[from], size);
+            }
+            for (int k = start; k < end; k++) {
+                int i = (int) order[k], to = toHandles[i];
+                var type = batch.edgeType(i);
+                int delta;
+                if (batch.operation(i) == MutationBatch.ADD_EDGE) {
+                    if ((marks == null) ? containsEdge(from, to, type) : marks.contains(to, type)) continue;
+                    outgoing[from].add(to, type);
+                    incoming[to].add(from, type);
+                    if (marks != null) marks.add(to, type);
+                    edgeAdded(from, to);
+                    delta = 1;
+                } else {
+                    if ((marks != null && !marks.contains(to, type)) || !outgoing[from].remove(to, type)) {
+                        errors[i] = "This edge not be found!";
+                        continue;
+                    }
+                    incoming[to].remove(from, type);
+                    if (marks != null) marks.remove(to, type);
+                    edgeRemoved();
+                    delta = -1;
+                }
+                int t = type.ordinal();
+                edgeDeltas[t] += delta;
+                if (type.equals(EdgeType.follow)) userRelations[t] += relations(from, to, type, delta, marks);
+                else postRelations[t] += relations(from, to, type, delta, marks);
+                changes[changed++] = ((long) to * EDGE_TYPES.length + t) << 1 | (delta > 0 ? 1 : 0);
+            }
+        }
+        if (changed == 0) return;
+
+        for (int t = 0; t < EDGE_TYPES.length; t++) {
+            if (edgeDeltas[t] != 0 || userRelations[t] != 0 || postRelations[t] != 0)
+                statisticsChanged(EDGE_TYPES[t], edgeDeltas[t], userRelations[t], postRelations[t]);
+        }
+        Arrays.sort(changes, 0, changed);
+        for (int k = 0; k < changed; ) {
+            long key = changes[k] >>> 1;
+            int delta = 0;
+            for (; k < changed && changes[k] >>> 1 == key; k++) delta += ((changes[k] & 1) == 0) ? -1 : 1;
+            if (delta != 0)
+                countEdge(nodeAt[(int) (key / EDGE_TYPES.length)], EDGE_TYPES[(int) (key % EDGE_TYPES.length)], delta);
+        }
+        suggestions.changed();
+        if (suggestions.isEmpty()) return;
+        for (int k = 0; k < edges; k++) {
+            int i = (int) order[k];
+            if (errors[i] != null) continue;
+            invalidateSuggestionsOf((int) (order[k] >>> 32));
+            invalidateSuggestionsOf(toHandles[i]);
+        }
     }
 
     private boolean validateEdge(Node from, Node to, EdgeType type) {
@@ -67,19 +394,244 @@ public class Graph {
     }
 
     public boolean removeEdge(String from, String to, String type) {
-        var fromNode = nodes.get(from);
-        var toNode = nodes.get(to);
-        return removeEdge(fromNode, toNode, EdgeType.valueOf(type), adjacencyList);
+        var edgeType = EdgeType.valueOf(type);
+        Integer fromHandle = handles.get(from);
+        Integer toHandle = handles.get(to);
+        if (fromHandle == null || toHandle == null) return false;
+        return removeEdge(fromHandle, toHandle, edgeType);
+    }
+
+    private boolean removeEdge(int from, int to, EdgeType type) {
+        if (!outgoing[from].remove(to, type)) return false;
+        incoming[to].remove(from, type);
+        countEdge(nodeAt[to], type, -1);
+        edgeRemoved();
+        countRelation(from, to, type, -1);
+        invalidateSuggestions(from, to);
+        return true;
+    }
+
+    /**
+     * Removes cached suggestions that an added or removed edge can change. Suggestions of a user only read
+     * edges of the user and of its followings, so suggestions of the endpoints and their followers are
+     * removed. Under ConcurrentGraph the caller holds the stripes of both endpoints
+     *
+     * @param from Handle of source node
+     * @param to   Handle of destination node
+     */
+    private void invalidateSuggestions(int from, int to) {
+        suggestions.changed();
+        if (suggestions.isEmpty()) return;
+        invalidateSuggestionsOf(from);
+        invalidateSuggestionsOf(to);
+    }
+
+    /**
+     * Removes cached suggestions of given user and of the users that follow it
+     *
+     * @param handle Handle of node, nothing is removed if it is not a user
+     */
+    private void invalidateSuggestionsOf(int handle) {
+        if (!nodeAt[handle].getType().equals(NodeType.user)) return;
+        suggestions.invalidate(nodeAt[handle].getId());
+        var in = incoming[handle];
+        for (int i = 0; i < in.size(); i++) {
+            if (in.type(i).equals(EdgeType.follow)) suggestions.invalidate(nodeAt[in.node(i)].getId());
+        }
+    }
+
+    /*
+    State that is shared between nodes (leaderboards, components, feature index and version) is only
+    changed through the methods below, so ConcurrentGraph can guard it
+     */
+
+    /**
+     * Adds given number to count of edges of given type to given node in its leaderboard
+     *
+     * @param to    Destination node
+     * @param type  Type of edge
+     * @param delta Number that is added, can be negative
+     */
+    void countEdge(Node to, EdgeType type, int delta) {
+        nodeBoards.get(to.getType()).get(type).add(to, delta);
+    }
+
+    /**
+     * Updates components and version after an edge is added
+     *
+     * @param from Handle of source node
+     * @param to   Handle of destination node
+     */
+    void edgeAdded(int from, int to) {
+        components.union(from, to);
+        modCount++;
+    }
+
+    /**
+     * Updates components and version after an edge is removed
+     */
+    void edgeRemoved() {
+        components.invalidate();
+        modCount++;
+    }
+
+    /**
+     * Adds given numbers to statistics
+     *
+     * @param type          Type of edge
+     * @param edges         Number that is added to edges of given type
+     * @param userRelations Number that is added to relations between users
+     * @param postRelations Number that is added to relations between users and posts
+     */
+    void statisticsChanged(EdgeType type, int edges, int userRelations, int postRelations) {
+        statistics.addEdges(type, edges);
+        statistics.addRelations(userRelations, postRelations);
+    }
+
+    /**
+     * Updates index and leaderboard of features after a feature is added to a node
+     *
+     * @param nodeID  Id of post or message
+     * @param feature Feature
+     */
+    void featureAdded(String nodeID, Feature feature) {
+        featurePostings.computeIfAbsent(feature.getId(), k -> new LinkedHashSet<>()).add(nodeID);
+        featureBoards.get(feature.getType()).increment(feature);
+        statistics.addFeatures(feature.getType(), 1);
+    }
+
+    /**
+     * Updates index and leaderboard of features after a feature is removed from a node
+     *
+     * @param nodeID  Id of post or message
+     * @param feature Feature
+     */
+    void featureRemoved(String nodeID, Feature feature) {
+        var postings = postingsOf(feature.getId());
+        if (postings.remove(nodeID) && postings.isEmpty()) featurePostings.remove(feature.getId());
+        featureBoards.get(feature.getType()).decrement(feature);
+        statistics.addFeatures(feature.getType(), -1);
+    }
+
+    /**
+     * Updates statistics after an edge is added or removed. A follow edge adds a relation for both users if
+     * the opposite edge does not exist, and a like or comment edge adds a relation if the user has no other
+     * edge to the post
+     *
+     * @param from  Handle of source node
+     * @param to    Handle of destination node
+     * @param type  Type of edge
+     * @param delta 1 for added edge and -1 for removed edge
+     */
+    private void countRelation(int from, int to, EdgeType type, int delta) {
+        int relations = relations(from, to, type, delta, null);
+        if (type.equals(EdgeType.follow)) statisticsChanged(type, delta, relations, 0);
+        else statisticsChanged(type, delta, 0, relations);
+    }
+
+    /**
+     * Gives number of relations that an added or removed edge adds, between users for a follow edge and
+     * between users and posts for other edges
+     *
+     * @param from  Handle of source node
+     * @param to    Handle of destination node
+     * @param type  Type of edge
+     * @param delta 1 for added edge and -1 for removed edge
+     * @param marks Marks of edges of source node, or null if edges are searched in edge lists
+     * @return Number of relations, negative for removed relations
+     */
+    private int relations(int from, int to, EdgeType type, int delta, EdgeMarks marks) {
+        if (type.equals(EdgeType.follow)) {
+            if (from == to) return delta;
+            return containsEdge(to, from, EdgeType.follow) ? 0 : 2 * delta;
+        }
+        if (!nodeAt[to].getType().equals(NodeType.post)) return 0;
+        var other = type.equals(EdgeType.like) ? EdgeType.comment : EdgeType.like;
+        boolean hasOther = (marks == null) ? containsEdge(from, to, other) : marks.contains(to, other);
+        return hasOther ? 0 : delta;
+    }
+
+    /**
+     * Removes a node and its edges from statistics. Neighbours are sorted to count each relation once
+     *
+     * @param handle Handle of node
+     */
+    private void removeStatistics(int handle) {
+        var type = nodeAt[handle].getType();
+        statistics.addNodes(type, -1);
+        var out = outgoing[handle];
+        var in = incoming[handle];
+        for (int i = 0; i < out.size(); i++) statistics.addEdges(out.type(i), -1);
+        for (int i = 0; i < in.size(); i++) {
+            if (in.node(i) != handle) statistics.addEdges(in.type(i), -1);
+        }
+
+        if (type.equals(NodeType.user)) {
+            int[] users = new int[out.size() + in.size()];
+            int[] posts = new int[out.size()];
+            int userCount = 0, postCount = 0;
+            boolean self = false;
+            for (int i = 0; i < out.size(); i++) {
+                int target = out.node(i);
+                if (out.type(i).equals(EdgeType.follow)) {
+                    if (target == handle) self = true;
+                    else users[userCount++] = target;
+                } else if (nodeAt[target].getType().equals(NodeType.post)) posts[postCount++] = target;
+            }
+            for (int i = 0; i < in.size(); i++) {
+                if (in.type(i).equals(EdgeType.follow) && in.node(i) != handle) users[userCount++] = in.node(i);
+            }
+            statistics.addRelations(-2L * countDistinct(users, userCount) - (self ? 1 : 0), -countDistinct(posts, postCount));
+        } else if (type.equals(NodeType.post)) {
+            int[] users = new int[in.size()];
+            for (int i = 0; i < in.size(); i++) users[i] = in.node(i);
+            statistics.addRelations(0, -countDistinct(users, users.length));
+        }
     }
 
-    private boolean removeEdge(Node fromNode, Node toNode, EdgeType type, HashMap<Node, List<Edge>> adjList) {
-        if (fromNode == null || toNode == null) return false;
-        Edge e = new Edge(toNode, type);
-        return adjList.get(fromNode).removeIf(edge -> edge.equals(e));
+    /**
+     * Counts distinct numbers of the first items of given array. The items are sorted
+     *
+     * @param numbers Array of numbers
+     * @param count   Number of items
+     * @return Number of distinct items
+     */
+    private static int countDistinct(int[] numbers, int count) {
+        Arrays.sort(numbers, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || numbers[i] != numbers[i - 1]) distinct++;
+        }
+        return distinct;
+    }
+
+    /**
+     * Return true if the edge exists. The shorter list of outgoing edges of source and incoming edges of
+     * destination is searched
+     *
+     * @param from Handle of source node
+     * @param to   Handle of destination node
+     * @param type Type of edge
+     * @return true if the edge exists
+     */
+    private boolean containsEdge(int from, int to, EdgeType type) {
+        if (outgoing[from].size() <= incoming[to].size()) return outgoing[from].contains(to, type);
+        return incoming[to].contains(from, type);
+    }
+
+    /**
+     * Gives node of given id
+     *
+     * @param id Id of node
+     * @return Node or null if it not be found
+     */
+    private Node node(String id) {
+        Integer handle = handles.get(id);
+        return (handle == null) ? null : nodeAt[handle];
     }
 
     public void addFeature(String nodeID, int featureID) throws ExistElementException {
-        var node = nodes.get(nodeID);
+        var node = node(nodeID);
         if (node == null) throw new NoSuchElementException("Your node not be found!");
         if (node.getType().equals(NodeType.user))
             throw new IllegalArgumentException("Please enter node that type is post or message!");
@@ -89,17 +641,79 @@ public class Graph {
         if (features.get(node).contains(feature))
             throw new ExistElementException("This feature is exits for this node!");
         features.get(node).add(feature);
+        featureAdded(nodeID, feature);
+    }
+
+    /**
+     * Adds features of a batch to posts and messages without throwing
+     *
+     * @param nodeIDs    Ids of posts or messages
+     * @param featureIDs Ids of features
+     * @param count      Number of rows
+     * @return Array that gives error message of each row, null for added rows
+     */
+    public String[] addFeatures(String[] nodeIDs, int[] featureIDs, int count) {
+        String[] errors = new String[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                addFeature(nodeIDs[i], featureIDs[i]);
+            } catch (ExistElementException | RuntimeException e) {
+                errors[i] = e.getMessage();
+            }
+        }
+        return errors;
     }
 
     public boolean removeFeature(String nodeID, int featureID) {
-        var node = nodes.get(nodeID);
+        var node = node(nodeID);
         var feature = MainController.features.get(featureID);
         if (node == null || feature == null) return false;
         if (node.getType().equals(NodeType.user)) throw new IllegalArgumentException("Node type cannot be user!");
-        features.get(node).remove(feature);
+        if (features.get(node).remove(feature)) featureRemoved(nodeID, feature);
         return true;
     }
 
+    /**
+     * Removes given feature from all posts and messages that have it
+     *
+     * @param featureID Id of feature
+     * @return false if the feature not be found
+     */
+    public boolean removeFeatureFromAllNodes(int featureID) {
+        var feature = MainController.features.get(featureID);
+        if (feature == null) return false;
+        var postings = featurePostings.remove(featureID);
+        if (postings != null) {
+            for (var nodeID : postings) features.get(node(nodeID)).remove(feature);
+            statistics.addFeatures(feature.getType(), -postings.size());
+        }
+        featureBoards.get(feature.getType()).remove(feature);
+        return true;
+    }
+
+    /**
+     * Gives ids of posts and messages that have given feature
+     *
+     * @param featureID Id of feature
+     * @return Set of node ids, empty if no node has this feature
+     */
+    private Set<String> postingsOf(int featureID) {
+        return featurePostings.getOrDefault(featureID, Collections.emptySet());
+    }
+
+    /**
+     * Gives feature of given id
+     *
+     * @param featureID Id of feature
+     * @return Feature
+     * @throws NoSuchElementException if the feature not be found
+     */
+    private Feature featureOf(int featureID) {
+        var feature = MainController.features.get(featureID);
+        if (feature == null) throw new NoSuchElementException("Your feature not be found!");
+        return feature;
+    }
+
     //-----------------------------Methods for 1,2,3,4 questions---------------------------
 
     /**
@@ -112,16 +726,10 @@ public class Graph {
      */
     public HashMap<String, Integer> calculateFollowersOrLikes(NodeType nodeType, EdgeType edgeType) {
         HashMap<String, Integer> itemsNumber = new HashMap<>();
-        for (var node : nodes.values()) {
-            if (!node.getType().equals(nodeType)) continue;
-            int count = 0;
-            Edge e = new Edge(node, edgeType);
-            for (var list : adjacencyList.values()) {
-                if (list.contains(e)) {
-                    count++;
-                }
-            }
-            itemsNumber.putIfAbsent(node.getLabel(), count);
+        for (int h = 0; h < size; h++) {
+            var node = nodeAt[h];
+            if (node == null || !node.getType().equals(nodeType)) continue;
+            itemsNumber.putIfAbsent(node.getLabel(), incoming[h].count(edgeType));
         }
         return itemsNumber;
     }
@@ -136,13 +744,7 @@ public class Graph {
         HashMap<String, Integer> itemsNumber = new HashMap<>();
         for (var feature : MainController.features.values()) {
             if (!feature.getType().equals(featureType)) continue;
-            int count = 0;
-            for (var list : features.values()) {
-                if (list.contains(feature)) {
-                    count++;
-                }
-            }
-            itemsNumber.putIfAbsent(feature.getLabel(), count);
+            itemsNumber.putIfAbsent(feature.getLabel(), postingsOf(feature.getId()).size());
         }
         return itemsNumber;
     }
@@ -165,6 +767,83 @@ public class Graph {
         return threeTop;
     }
 
+    /**
+     * Gives labels of nodes of given type that have the most number of edges of given type to them,
+     * for example the users that have the most followers. Counts are kept while edges change, so this
+     * costs O(k)
+     *
+     * @param nodeType Type of node
+     * @param edgeType Type of edge
+     * @param k        Number of items
+     * @return Array of labels in descending order, less than k labels if there are less than k items
+     */
+    public String[] topFollowersOrLikes(NodeType nodeType, EdgeType edgeType, int k) {
+        var leaders = nodeBoards.get(nodeType).get(edgeType).top(k);
+        String[] top = new String[leaders.size()];
+        for (int i = 0; i < top.length; i++) top[i] = leaders.get(i).getLabel();
+        return top;
+    }
+
+    /**
+     * Gives labels of features of given type that are used in the most number of posts and messages.
+     * Counts are kept while features change, so this costs O(k)
+     *
+     * @param featureType Type of feature
+     * @param k           Number of items
+     * @return Array of labels in descending order, less than k labels if there are less than k items
+     */
+    public String[] topHashtagsOrMentions(FeatureType featureType, int k) {
+        var leaders = featureBoards.get(featureType).top(k);
+        String[] top = new String[leaders.size()];
+        for (int i = 0; i < top.length; i++) top[i] = leaders.get(i).getLabel();
+        return top;
+    }
+
+    //-----------------------------Methods for searching features--------------------------
+
+    /**
+     * Gives ids of posts and messages that have given feature, for example posts that have a hashtag.
+     * It uses the index from features to nodes, so it costs O(number of these nodes)
+     *
+     * @param featureID Id of feature
+     * @return List of node ids in the order that the feature is added to them
+     */
+    public List<String> listOfNodesWithFeature(int featureID) {
+        featureOf(featureID);
+        return new ArrayList<>(postingsOf(featureID));
+    }
+
+    /**
+     * Gives number of posts and messages that have given feature, for example number of mentions of a user
+     *
+     * @param featureID Id of feature
+     * @return Number of nodes
+     */
+    public int numberOfNodesWithFeature(int featureID) {
+        featureOf(featureID);
+        return postingsOf(featureID).size();
+    }
+
+    /**
+     * Gives features of given type that are used together with given feature in a post or message and
+     * the number of nodes that have both of them. It only visits the nodes that have given feature
+     *
+     * @param featureID   Id of feature
+     * @param featureType Type of features that are counted
+     * @return Hashtable that the key is label of feature and the value is number of nodes
+     */
+    public HashMap<String, Integer> coOccurringFeatures(int featureID, FeatureType featureType) {
+        var feature = featureOf(featureID);
+        HashMap<String, Integer> itemsNumber = new HashMap<>();
+        for (var nodeID : postingsOf(featureID)) {
+            for (var other : features.get(node(nodeID))) {
+                if (other.equals(feature) || !other.getType().equals(featureType)) continue;
+                itemsNumber.merge(other.getLabel(), 1, Integer::sum);
+            }
+        }
+        return itemsNumber;
+    }
+
     /**
      * Gets Hashtable that the keys are labels and the values are numbers and return max key
      *
@@ -194,20 +873,53 @@ public class Graph {
      * @return List of friends id
      */
     public List<String> listOfFriends(String userID) {
-        var userNode = nodes.get(userID);
-        if (userNode == null) throw new NoSuchElementException("This user not be found!");
-        if (!userNode.getType().equals(NodeType.user))
-            throw new IllegalArgumentException("Your input type is not user!");
+        int user = userHandle(userID);
         LinkedList<String> friends = new LinkedList<>();
-        for (var edge : adjacencyList.get(userNode)) {
-            if (!edge.getType().equals(EdgeType.follow)) continue;
-            Edge e = new Edge(userNode, EdgeType.follow);
-            if (adjacencyList.get(edge.getDestination()).contains(e))
-                friends.add(edge.getDestination().getId());
+        var out = outgoing[user];
+        for (int i = 0; i < out.size(); i++) {
+            if (!out.type(i).equals(EdgeType.follow)) continue;
+            if (outgoing[out.node(i)].contains(user, EdgeType.follow))
+                friends.add(nodeAt[out.node(i)].getId());
         }
         return friends;
     }
 
+    /**
+     * Gets id of user and returns list of followers
+     *
+     * @param userID Id of user
+     * @return List of users id that follow given user
+     */
+    public List<String> listOfFollowers(String userID) {
+        return listOfSources(handleOf(userID, "This user not be found!"), EdgeType.follow);
+    }
+
+    /**
+     * Gets id of post or message and returns list of users that like it
+     *
+     * @param nodeID Id of post or message
+     * @return List of users id that like given node
+     */
+    public List<String> listOfLikers(String nodeID) {
+        return listOfSources(handleOf(nodeID, "This node not be found!"), EdgeType.like);
+    }
+
+    /**
+     * Gives ids of nodes that have an edge of given type to given node
+     *
+     * @param handle Handle of destination node
+     * @param type   Type of edge
+     * @return List of source nodes id
+     */
+    private List<String> listOfSources(int handle, EdgeType type) {
+        LinkedList<String> sources = new LinkedList<>();
+        var in = incoming[handle];
+        for (int i = 0; i < in.size(); i++) {
+            if (in.type(i).equals(type)) sources.add(nodeAt[in.node(i)].getId());
+        }
+        return sources;
+    }
+
     /**
      * Gets id of user and returns list of followings
      *
@@ -215,11 +927,10 @@ public class Graph {
      * @return List of users id that given user id follows them
      */
     public List<String> listOfFollowings(String userID) {
-        var userNode = nodes.get(userID);
-        if (userNode == null) throw new NoSuchElementException("This user not be found!");
+        var out = outgoing[handleOf(userID, "This user not be found!")];
         LinkedList<String> followings = new LinkedList<>();
-        for (var edge : adjacencyList.get(userNode)) {
-            if (edge.getType().equals(EdgeType.follow)) followings.add(edge.getDestination().getId());
+        for (int i = 0; i < out.size(); i++) {
+            if (out.type(i).equals(EdgeType.follow)) followings.add(nodeAt[out.node(i)].getId());
         }
         return followings;
     }
@@ -231,15 +942,41 @@ public class Graph {
      * @return List of posts id
      */
     public List<String> listOfPosts(String userID) {
-        var userNode = nodes.get(userID);
-        if (userNode == null) throw new NoSuchElementException("This user not be found!");
+        var out = outgoing[handleOf(userID, "This user not be found!")];
         LinkedList<String> posts = new LinkedList<>();
-        for (var edge : adjacencyList.get(userNode)) {
-            if (edge.getDestination().getType().equals(NodeType.post)) posts.add(edge.getDestination().getId());
+        for (int i = 0; i < out.size(); i++) {
+            var destination = nodeAt[out.node(i)];
+            if (destination.getType().equals(NodeType.post)) posts.add(destination.getId());
         }
         return posts;
     }
 
+    /**
+     * Gives handle of given node id
+     *
+     * @param id      Id of node
+     * @param message Message of exception if the node not be found
+     * @return Handle of node
+     */
+    private int handleOf(String id, String message) {
+        Integer handle = handles.get(id);
+        if (handle == null) throw new NoSuchElementException(message);
+        return handle;
+    }
+
+    /**
+     * Gives handle of given user id
+     *
+     * @param userID Id of user
+     * @return Handle of user
+     */
+    private int userHandle(String userID) {
+        int handle = handleOf(userID, "This user not be found!");
+        if (!nodeAt[handle].getType().equals(NodeType.user))
+            throw new IllegalArgumentException("Your input type is not user!");
+        return handle;
+    }
+
     /**
      * Gets type of relation and id of user then calculates number of relations for each node by type of relations
      * that have relationships between given user and other users
@@ -303,13 +1040,17 @@ public class Graph {
 
     /**
      * Gets user ID and type of node that can be post or user then returns suggested item according to number of
-     * relationships
+     * relationships. Suggested items are cached until an edge near the user changes
      *
      * @param userID id of user
      * @param type   Type of node
-     * @return Suggested item
+     * @return Suggested item, or null if the user has no friends or followings that give one
      */
     public String suggestedItem(String userID, NodeType type) {
+        String cached = suggestions.get(userID, type);
+        if (cached != null) return cached;
+        long ticket = suggestions.ticket();
+
         String suggestedItem = null;
         if (type.equals(NodeType.user)) {
             suggestedItem = getMaxFromHashTable(relation(RelationType.FriendsOfFriends, userID)).getFirst();
@@ -324,7 +1065,39 @@ public class Graph {
             if (suggestedItem.isEmpty())
                 suggestedItem = getMaxFromHashTable(relation(RelationType.PostsOfFollowings, userID)).getFirst();
         }
-        return nodes.get(suggestedItem).getLabel();
+        if (suggestedItem == null || suggestedItem.isEmpty()) return null;
+        String label = node(suggestedItem).getLabel();
+        suggestions.put(userID, type, label, ticket);
+        return label;
+    }
+
+    /**
+     * Gives the best suggested users or posts for a user with their scores. All relation types are
+     * scored together with the default weights of RecommendationEngine on the current version of graph
+     *
+     * @param userID id of user
+     * @param type   Type of suggested items, user or post
+     * @param n      Number of items
+     * @return At most n items in descending order of score
+     */
+    public List<Recommendation> recommend(String userID, NodeType type, int n) {
+        try (var version = pin()) {
+            return new RecommendationEngine(version.getSnapshot()).recommend(userID, type, n);
+        }
+    }
+
+    /**
+     * Gives the best suggested users or posts for all users. Users are split between tasks of the common
+     * ForkJoinPool, so it can be used to calculate all suggestions at once
+     *
+     * @param type Type of suggested items, user or post
+     * @param n    Number of items for each user
+     * @return Hashtable -> key: user id, value: suggested items in descending order of score
+     */
+    public Map<String, List<Recommendation>> recommendAll(NodeType type, int n) {
+        try (var version = pin()) {
+            return new RecommendationEngine(version.getSnapshot()).recommendAll(type, n, ForkJoinPool.commonPool());
+        }
     }
 
     //-------------------------------------------------------------------------
@@ -336,11 +1109,7 @@ public class Graph {
      * @return Number of posts
      */
     public int numberOfAllPosts() {
-        int counter = 0;
-        for (var node : nodes.values()) {
-            if (node.getType().equals(NodeType.post)) counter++;
-        }
-        return counter;
+        return (int) statistics.getNumberOfNodes(NodeType.post);
     }
 
     /**
@@ -350,17 +1119,14 @@ public class Graph {
      */
     public LinkedList<Integer> numbersOfRelationsBetweenEachUserWithOtherUsers() {
         LinkedList<Integer> numbers = new LinkedList<>();
-        for (var nodeID : nodes.keySet()) {
-            if (!nodes.get(nodeID).getType().equals(NodeType.user)) continue;
-            HashSet<String> relations = new HashSet<>(listOfFollowings(nodeID));
-            for (var node : nodes.values()) {
-                if (!node.getType().equals(NodeType.user)) continue;
-                Edge e = new Edge(nodes.get(nodeID), EdgeType.follow);
-                if (adjacencyList.get(node).contains(e)) {
-                    relations.add(node.getId());
-                }
-            }
-            numbers.add(relations.size());
+        int[] seen = new int[size];
+        int stamp = 0;
+        for (int h = 0; h < size; h++) {
+            if (nodeAt[h] == null || !nodeAt[h].getType().equals(NodeType.user)) continue;
+            stamp++;
+            int relations = countDistinct(outgoing[h], EdgeType.follow, seen, stamp)
+                    + countDistinct(incoming[h], EdgeType.follow, seen, stamp);
+            numbers.add(relations);
         }
         return numbers;
     }
@@ -372,52 +1138,78 @@ public class Graph {
      */
     public LinkedList<Integer> numbersOfRelationsBetweenEachUserWithPosts() {
         LinkedList<Integer> numbers = new LinkedList<>();
-        for (var nodeID : nodes.keySet()) {
-            if (!nodes.get(nodeID).getType().equals(NodeType.user)) continue;
-            HashSet<String> relations = new HashSet<>(listOfPosts(nodeID));
-            numbers.add(relations.size());
+        int[] seen = new int[size];
+        int stamp = 0;
+        for (int h = 0; h < size; h++) {
+            if (nodeAt[h] == null || !nodeAt[h].getType().equals(NodeType.user)) continue;
+            stamp++;
+            int relations = 0;
+            var out = outgoing[h];
+            for (int i = 0; i < out.size(); i++) {
+                int target = out.node(i);
+                if (seen[target] == stamp || !nodeAt[target].getType().equals(NodeType.post)) continue;
+                seen[target] = stamp;
+                relations++;
+            }
+            numbers.add(relations);
         }
         return numbers;
     }
 
     /**
-     * Density just between users
+     * Counts nodes of edges of given type that are not marked with given stamp and marks them
+     *
+     * @param edges List of edges
+     * @param type  Type of edge
+     * @param seen  Stamp of each handle
+     * @param stamp Current stamp
+     * @return Number of new nodes
+     */
+    private static int countDistinct(EdgeList edges, EdgeType type, int[] seen, int stamp) {
+        int count = 0;
+        for (int i = 0; i < edges.size(); i++) {
+            int node = edges.node(i);
+            if (seen[node] == stamp || !edges.type(i).equals(type)) continue;
+            seen[node] = stamp;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Density just between users. Relations are counted when edges change, so this is O(1)
      *
      * @return Density percent
      */
     public float densityOfUsersPercent() {
-        int sum = 0;
-        LinkedList<Integer> numbers = numbersOfRelationsBetweenEachUserWithOtherUsers();
-        for (var num : numbers) sum += num;
-        return (float) (Math.round(((float) sum / numbers.size() / numbers.size()) * 100 * 100.0) / 100.0);
+        return statistics.densityOfUsersPercent();
     }
 
     /**
-     * Density Just between users and posts
+     * Density Just between users and posts. Relations are counted when edges change, so this is O(1)
      *
      * @return Density percent
      */
     public float densityJustBetweenUsersAndPostsPercent() {
-        int sum = 0;
-        int numberOfPosts = numberOfAllPosts();
-        LinkedList<Integer> numbers = numbersOfRelationsBetweenEachUserWithPosts();
-        for (var num : numbers) sum += num;
-        return (float) (Math.round((float) sum / (numberOfPosts * numbers.size()) * 100 * 100.0) / 100.0);
+        return statistics.densityJustBetweenUsersAndPostsPercent();
     }
 
     /**
-     * Density between Users and Posts
+     * Density between Users and Posts. Relations are counted when edges change, so this is O(1)
      *
      * @return Density percent
      */
     public float densityTotalBetweenUsersAndPostsPercent() {
-        int sum = 0;
-        int numberOfPosts = numberOfAllPosts();
-        LinkedList<Integer> numbers1 = numbersOfRelationsBetweenEachUserWithOtherUsers();
-        LinkedList<Integer> numbers2 = numbersOfRelationsBetweenEachUserWithPosts();
-        for (var num : numbers1) sum += num;
-        for (var num : numbers2) sum += num;
-        return (float) (Math.round((float) sum / (numberOfPosts + numbers1.size()) / (numberOfPosts + numbers1.size()) * 100 * 100.0) / 100.0);
+        return statistics.densityTotalBetweenUsersAndPostsPercent();
+    }
+
+    /**
+     * Gives a copy of statistics of graph: numbers of nodes and edges of each type and numbers of relations
+     *
+     * @return Statistics of graph
+     */
+    public GraphStatistics statistics() {
+        return new GraphStatistics(statistics);
     }
 
     //-------------------------------------------------------------------------
@@ -432,108 +1224,95 @@ public class Graph {
      * @return Set of nodes (path) between two entered node
      */
     public Set<Node> findPath(String nodeID1, String nodeID2, byte in) {
-        var node1 = nodes.get(nodeID1);
-        var node2 = nodes.get(nodeID2);
+        var node1 = node(nodeID1);
+        var node2 = node(nodeID2);
         if (node1 == null) throw new NoSuchElementException("The source node not be found!");
         if (node2 == null) throw new NoSuchElementException("The destination node not be found!");
         if (!node1.getType().equals(NodeType.user)) throw new IllegalArgumentException("Source node type is not user!");
         if (!node2.getType().equals(NodeType.user)) throw new IllegalArgumentException("Destination type is not user!");
+        int from = handles.get(nodeID1), to = handles.get(nodeID2);
         switch (in) {
             case 1:
-                return findPathDFS(node1, node2, adjacencyList);
+                int[] path = pathFinder().depthFirstPath(from, to, Integer.MAX_VALUE);
+                return nodesOf((path != null) ? path : pathFinder().depthFirstPath(to, from, Integer.MAX_VALUE));
             case 2:
-                Set<Node> ret = findPathBFS(nodeID1, nodeID2);
-                return (ret.isEmpty()) ? findPathBFS(nodeID2, nodeID1) : ret;
+                path = findPathBFS(from, to, Integer.MAX_VALUE);
+                return nodesOf((path != null) ? path : findPathBFS(to, from, Integer.MAX_VALUE));
             default:
                 return null;
         }
     }
 
     /**
-     * Supplementary method of findPathDFS
-     * @param node1 First node
-     * @param node2 Second node
-     * @param adjList Adjacency List
-     * @return Set of nodes that start with from node to second node (Path)
+     * Finds a path from first node to second node by DFS. The search keeps its own stack, so it can go
+     * along chains of any length
+     *
+     * @param nodeID1  First node id
+     * @param nodeID2  Second node id
+     * @param maxDepth Maximum number of edges of path, Integer.MAX_VALUE for no limit
+     * @return Nodes of path in order from first node to second node, empty if it not be found
      */
-    private Set<Node> findPathDFS(Node node1, Node node2, HashMap<Node, List<Edge>> adjList) {
-        Set<Node> all = new LinkedHashSet<>(nodes.values());
-        Set<Node> visiting = new LinkedHashSet<>();
-        Set<Node> visited = new LinkedHashSet<>();
-        findPathDFS(node1, node2, all, visiting, visited, adjList);
-        if (visiting.isEmpty()) findPathDFS(node2, node1, all, visiting, visited, adjList);
-        return visiting;
+    public List<Node> findPathDFS(String nodeID1, String nodeID2, int maxDepth) {
+        if (maxDepth < 0) throw new IllegalArgumentException("Depth limit cannot be negative!");
+        int from = handleOf(nodeID1, "The source node not be found!");
+        int to = handleOf(nodeID2, "The destination node not be found!");
+        return new ArrayList<>(nodesOf(pathFinder().depthFirstPath(from, to, maxDepth)));
     }
 
     /**
-     * Finding Path between two nodes by DFS algorithm
+     * Finding a shortest path between two nodes by bidirectional BFS
      *
-     * @param n1       First node
-     * @param n2       Second node
-     * @param all      Set of all nodes
-     * @param visiting Set of nodes that are in visiting state
-     * @param visited  Set of nodes that are in visited state
-     * @param adjList  Adjacency List
+     * @param from      Handle of first node
+     * @param to        Handle of second node
+     * @param maxLength Maximum number of edges of path
+     * @return Handles of nodes of path from first node to second node, or null if it not be found
      */
-    private void findPathDFS(Node n1, Node n2, Set<Node> all,
-                             Set<Node> visiting, Set<Node> visited, HashMap<Node, List<Edge>> adjList) {
-        if (visiting.contains(n2) || visiting.contains(n1) || adjList.get(n1) == null) return;
-        all.remove(n1);
-        visiting.add(n1);
-        if (containsByNodeID(adjList.get(n1), n2.getId())) {
-            visiting.add(n2);
-            return;
-        }
-        for (var neighbour : adjList.get(n1)) {
-            if (visited.contains(neighbour.getDestination()))
-                continue;
-            if (visiting.contains(n2)) return;
-            else {
-                findPathDFS(neighbour.getDestination(), n2, all, visiting, visited, adjList);
-            }
-        }
+    private int[] findPathBFS(int from, int to, int maxLength) {
+        return pathFinder().shortestPath(from, to, maxLength);
+    }
 
-        visiting.remove(n1);
-        visited.add(n1);
+    /**
+     * Gives path finder of this graph, it is created on first use
+     *
+     * @return Path finder
+     */
+    private PathFinder pathFinder() {
+        if (pathFinder == null) pathFinder = new PathFinder(this);
+        return pathFinder;
     }
 
     /**
-     * Finding path between two nodes by BFS algorithm
+     * Gives nodes of given handles in order
      *
-     * @param from First node
-     * @param to   Second node
-     * @return Set of nodes that start with from node to second node
+     * @param path Handles of nodes, can be null
+     * @return Set of nodes, empty if path is null
      */
-    private Set<Node> findPathBFS(String from, String to) {
-        var fromNode = nodes.get(from);
-        var toNode = nodes.get(to);
+    private Set<Node> nodesOf(int[] path) {
+        Set<Node> nodes = new LinkedHashSet<>();
+        if (path != null) for (int handle : path) nodes.add(nodeAt[handle]);
+        return nodes;
+    }
 
-        Map<Node, Node> previousNodes = new HashMap<>();
-        Set<Node> visited = new HashSet<>();
-        Set<Node> path = new LinkedHashSet<>();
-        Queue<Node> queue = new ArrayDeque<>();
-        queue.add(fromNode);
-        while (!queue.isEmpty()) {
-            var current = queue.remove();
-            visited.add(current);
-            if (adjacencyList.get(current).isEmpty()) continue;
-            for (var neighbor : adjacencyList.get(current)) {
-                if (visited.contains(neighbor.getDestination())) continue;
-                previousNodes.putIfAbsent(neighbor.getDestination(), current);
-                queue.add(neighbor.getDestination());
-            }
-        }
-        Stack<Node> stack = new Stack<>();
-        stack.push(toNode);
-        var previous = previousNodes.get(toNode);
-        while (previous != null) {
-            stack.push(previous);
-            previous = previousNodes.get(previous);
+    /**
+     * Gives each node that is at most maxDepth edges away from the seeds, with its distance. One BFS is run
+     * from all seeds on the pinned current version, and nodes are given to the visitor level by level, so
+     * no set of nodes is built. For example followers of likers of a post are reached from the post with
+     * depth 2, types like and follow and direction INCOMING
+     *
+     * @param seedIDs   Ids of seed nodes
+     * @param maxDepth  Maximum distance of nodes
+     * @param types     Types of edges that are followed
+     * @param direction Direction that edges are followed in
+     * @param visitor   Gets each reached node and its distance
+     * @return Number of reached nodes, seeds included
+     */
+    public int neighbourhood(Collection<String> seedIDs, int maxDepth, Set<EdgeType> types, Direction direction,
+                             ObjIntConsumer<Node> visitor) {
+        try (var version = pin()) {
+            return version.getSnapshot().neighbourhood(seedIDs, maxDepth, types, direction, visitor);
         }
-        while (!stack.isEmpty()) path.add(stack.pop());
-        if (!path.contains(fromNode) || !path.contains(toNode)) path.clear();
-        return path;
     }
+
     //-------------------------------------------------------------------------
     //-------------------------Methods of Question 9---------------------------
 
@@ -543,7 +1322,7 @@ public class Graph {
      * @return Set of Visited nodes
      */
     public Set<Node> DFS(String root) {
-        var node = nodes.get(root);
+        var node = node(root);
         if (node == null) throw new NoSuchElementException("Root node not be found!");
         HashSet<Node> visited = new HashSet<>();
         Stack<Node> nodeStack = new Stack<>();
@@ -555,102 +1334,50 @@ public class Graph {
                 continue;
             }
             visited.add(current);
-            if (adjacencyList.get(current) == null) continue;
-            for (var neighbor : adjacencyList.get(current)) {
-                if (!visited.contains(neighbor.getDestination())) {
-                    nodeStack.push(neighbor.getDestination());
+            var out = outgoing[handles.get(current.getId())];
+            for (int i = 0; i < out.size(); i++) {
+                var neighbor = nodeAt[out.node(i)];
+                if (!visited.contains(neighbor)) {
+                    nodeStack.push(neighbor);
                 }
             }
         }
         return visited;
     }
 
-    /**
-     * Gives set of nodes by DFS on each nodes
-     * @return Hashtable -> key: node id, value: set of nodes
-     */
-    private HashMap<String, Set<Node>> DFS_foreachNodes() {
-        HashMap<String, Set<Node>> DFSs = new HashMap<>();
-        for (var id : nodes.keySet()) {
-            DFSs.put(id, DFS(id));
-        }
-        return DFSs;
-    }
-
     /**
      * Calculates all connected graphs in this graph
      * @return Set of set of nodes that are connected
      */
     public Set<Set<Node>> connectedGraphs() {
-        HashSet<Set<Node>> connectedGraphs = new HashSet<>();
-        for (var DFS_list : DFS_foreachNodes().values()) {
-            for (var connectedGraph : connectedGraphs) {
-                if (hasCommonItem(DFS_list, connectedGraph)) {
-                    DFS_list.addAll(connectedGraph);
-                }
-            }
-            connectedGraphs.add(DFS_list);
-        }
-        HashSet<Set<Node>> cg = new HashSet<>();
-        for (var connectedGraph : connectedGraphs) {
-            for (var connectedGraph2 : connectedGraphs) {
-                if (hasCommonItem(connectedGraph, connectedGraph2)) {
-                    connectedGraph.addAll(connectedGraph2);
-                }
-            }
-            cg.add(connectedGraph);
-        }
-
-        return cg;
+        return components.connectedGraphs();
     }
 
     /**
-     * Calculates the connected graph that has most number of users
+     * Gives the connected graph that has most number of users. Number of users of each connected graph
+     * is kept by the components index, so this is a lookup
      * @return Set of nodes of this connected graph
      */
     public Set<Node> mostNumberOfUsersConnectedGraph() {
-        Set<Set<Node>> connectedGraphs = connectedGraphs();
-        Set<Node> max = new HashSet<>();
-        int maxCounter = 0;
-        for (var connectedGraph : connectedGraphs) {
-            int counter = 0;
-            for (var node : connectedGraph) if (node.getType().equals(NodeType.user)) counter++;
-            if (counter > maxCounter) {
-                maxCounter = counter;
-                max = connectedGraph;
-            }
-        }
-        return max;
+        return components.mostNumberOfUsersConnectedGraph();
     }
 
-    /**
-     * Checks that list of edges have this node id as destination
-     * @param edges list of edges
-     * @param nodeID id of node
-     * @return true if one of edges has this node as destination
-     */
-    private boolean containsByNodeID(List<Edge> edges, String nodeID) {
-        for (var e : edges) if (e.getDestination().getId().equals(nodeID)) return true;
-        return false;
-    }
     //-------------------------------------------------------------------------
     //-------------------------Methods of Question 10--------------------------
 
     /**
-     * Gives shortest path between given two nodes
+     * Gives shortest path between given two nodes. Paths of both directions are searched and the path
+     * from second node is returned if it is not longer. The second search stops at length of first path
      * @param first First node id
      * @param second Second node id
      * @return Set of nodes between two given nodes
      */
     public Set<Node> getShortestPath(String first, String second) {
-        Set<Node> firstPath = findPathBFS(first, second);
-        Set<Node> secondPath = findPathBFS(second, first);
-        if (!firstPath.isEmpty() && !secondPath.isEmpty()) {
-            if (firstPath.size() < secondPath.size()) return firstPath;
-            else return secondPath;
-        } else if (firstPath.isEmpty() && !secondPath.isEmpty()) return secondPath;
-        else if (!firstPath.isEmpty()) return firstPath;
-        else return firstPath;
+        int from = handleOf(first, "The source node not be found!");
+        int to = handleOf(second, "The destination node not be found!");
+        int[] firstPath = findPathBFS(from, to, Integer.MAX_VALUE);
+        int[] secondPath = findPathBFS(to, from, (firstPath == null) ? Integer.MAX_VALUE : firstPath.length - 1);
+        return nodesOf((secondPath != null) ? secondPath : firstPath);
     }
 
     /**
@@ -663,32 +1390,19 @@ public class Graph {
         for (var n1 : nodes) {
             for (var n2 : nodes) {
                 Pair<Node, Node> pair = new Pair<>(n1, n2);
-                if (containsPair(shortestPaths.keySet(), pair)) continue;
+                if (shortestPaths.containsKey(pair)) continue;
                 shortestPaths.put(pair, getShortestPath(n1.getId(), n2.getId()));
             }
         }
         return shortestPaths;
     }
 
-    /**
-     * Return true if given pair of nodes in set of pairs
-     * @param set Set of pairs of nodes
-     * @param pair Pair of nodes
-     * @return true if given pair of nodes in set of pairs
-     */
-    private static boolean containsPair(Set<Pair<Node, Node>> set, Pair<Node, Node> pair) {
-        for (var p : set) {
-            if (p.equals(pair)) return true;
-        }
-        return false;
-    }
-
     /**
      * Shortest path of all pair of nodes in this graph
      * @return Hashtable -> key: pair of nodes, value: set of nodes between these two nodes (Shortest Path)
      */
     public HashMap<Pair<Node, Node>, Set<Node>> getShortestPathsForPairNodesOfGraph() {
-        return getShortestPathsForPairNodes(nodes.values());
+        return getShortestPathsForPairNodes(getNodes().values());
     }
 
     /**
@@ -700,36 +1414,97 @@ public class Graph {
     }
 
     /**
-     * Gets id of user and calculate betweenness centrality of this user
+     * Gets id of user and calculate betweenness centrality of this user. Centrality of all nodes is
+     * calculated once per snapshot with Brandes algorithm, so next calls only look it up
      * @param userID id of user
      * @return betweenness centrality
      */
-    public int betweennessCentrality(String userID) {
-        var userNode = nodes.get(userID);
+    public double betweennessCentrality(String userID) {
+        var userNode = node(userID);
         if (userNode == null) throw new NoSuchElementException("This node not be found!");
         if (!userNode.getType().equals(NodeType.user))
             throw new IllegalArgumentException("This node type is not user!");
-        int counter = 0;
-        for (var path : getShortestPathsForPairNodesOfConnectedGraph().values()) {
-            if (path.contains(userNode)) counter++;
-        }
-        return counter;
+        return snapshot().betweennessCentrality(userID);
     }
 
     //-------------------------------------------------------------------------
+
+    /**
+     * Gives a read-only CSR copy of nodes and edges of this graph. The copy is kept until the next
+     * change of nodes or edges, so repeated analytics share one snapshot
+     * @return Snapshot of this graph
+     */
+    public GraphSnapshot snapshot() {
+        if (cachedSnapshot() == null) snapshot = new GraphSnapshot(this);
+        return snapshot;
+    }
+
+    /**
+     * Gives the kept snapshot if it is the snapshot of current version
+     * @return Snapshot or null if the graph is changed after it
+     */
+    GraphSnapshot cachedSnapshot() {
+        var cached = snapshot;
+        return (cached != null && cached.getEpoch() == modCount) ? cached : null;
+    }
+
+    /**
+     * Gives version of this graph, it changes on each change of nodes or edges
+     * @return Epoch of graph
+     */
+    public int epoch() {
+        return modCount;
+    }
+
+    /**
+     * Pins the current version of this graph for a reader. The reader traverses the immutable snapshot of
+     * this version while the graph keeps changing, and closes it when the work is done. A version is only
+     * kept while the graph is still on it or a reader holds it, then it is reclaimed by garbage collector
+     * @return Pinned snapshot that must be closed
+     */
+    public PinnedSnapshot pin() {
+        var pinned = snapshot();
+        synchronized (pinnedEpochs) {
+            pinnedEpochs.merge(pinned.getEpoch(), 1, Integer::sum);
+        }
+        return new PinnedSnapshot(this, pinned);
+    }
+
+    /**
+     * Releases a version that a reader pinned
+     * @param epoch Epoch of version
+     */
+    void unpin(int epoch) {
+        synchronized (pinnedEpochs) {
+            pinnedEpochs.computeIfPresent(epoch, (e, readers) -> (readers == 1) ? null : readers - 1);
+        }
+    }
+
+    /**
+     * Gives versions that readers hold now
+     * @return Sorted set of epochs
+     */
+    public SortedSet<Integer> pinnedEpochs() {
+        synchronized (pinnedEpochs) {
+            return new TreeSet<>(pinnedEpochs.keySet());
+        }
+    }
+
     @Override
     public String toString() {
-        return "Vertices: " + nodes.values().toString() + "\n\nAdjacencyList: " + adjacencyList.toString() + "\n\nFeatures: " + features.toString();
+        return "Vertices: " + getNodes().values() + "\n\nAdjacencyList: " + getAdjacencyList() + "\n\nFeatures: " + features;
     }
 
 
     public String adjacencyListToString() {
         StringBuilder sb = new StringBuilder();
-        for (var node : adjacencyList.keySet()) {
-            sb.append(node.getId());
+        for (int h = 0; h < size; h++) {
+            if (nodeAt[h] == null) continue;
+            sb.append(nodeAt[h].getId());
             sb.append(":[");
-            for (var e : adjacencyList.get(node)) {
-                sb.append(e.getDestination().getId()).append(", ");
+            var out = outgoing[h];
+            for (int i = 0; i < out.size(); i++) {
+                sb.append(nodeAt[out.node(i)].getId()).append(", ");
             }
             sb.append("]\n");
         }
@@ -747,15 +1522,86 @@ public class Graph {
         return false;
     }
 
+    /**
+     * Gives all nodes. The map is built on each call and changing it does not change the graph
+     * @return Hashtable -> key: node id, value: node
+     */
     public HashMap<String, Node> getNodes() {
+        HashMap<String, Node> nodes = new HashMap<>(handles.size() * 2);
+        for (int h = 0; h < size; h++) {
+            if (nodeAt[h] != null) nodes.put(nodeAt[h].getId(), nodeAt[h]);
+        }
         return nodes;
     }
 
+    /**
+     * Gives outgoing edges of given node. The list is built on each call
+     * @param nodeID id of node
+     * @return List of edges
+     */
+    public List<Edge> getEdges(String nodeID) {
+        var out = outgoing[handleOf(nodeID, "This node not be found!")];
+        List<Edge> edges = new ArrayList<>(out.size());
+        for (int i = 0; i < out.size(); i++) edges.add(new Edge(nodeAt[out.node(i)], out.type(i)));
+        return edges;
+    }
+
+    /**
+     * Gives adjacency list of all nodes. It is built on each call, so for one node use getEdges
+     * @return Hashtable -> key: node, value: list of outgoing edges
+     */
     public HashMap<Node, List<Edge>> getAdjacencyList() {
+        HashMap<Node, List<Edge>> adjacencyList = new HashMap<>(handles.size() * 2);
+        for (int h = 0; h < size; h++) {
+            if (nodeAt[h] != null) adjacencyList.put(nodeAt[h], getEdges(nodeAt[h].getId()));
+        }
         return adjacencyList;
     }
 
     public HashMap<Node, List<Feature>> getFeatures() {
         return features;
     }
+
+    /**
+     * Gives cache of suggested items, for reading its counters or clearing it
+     * @return Cache of suggested items
+     */
+    public RecommendationCache getSuggestionCache() {
+        return suggestions;
+    }
+
+    int capacity() {
+        return size;
+    }
+
+    Node nodeAt(int handle) {
+        return nodeAt[handle];
+    }
+
+    EdgeList outgoing(int handle) {
+        return outgoing[handle];
+    }
+
+    EdgeList incoming(int handle) {
+        return incoming[handle];
+    }
+
+    int nodeCount() {
+        return handles.size();
+    }
+
+    /**
+     * Return true if the source has an outgoing edge of given type to the destination. Only outgoing
+     * edges of source are read
+     *
+     * @param from Id of source node
+     * @param to   Id of destination node
+     * @param type Type of edge
+     * @return true if the edge exists
+     */
+    boolean hasOutgoingEdge(String from, String to, EdgeType type) {
+        Integer fromHandle = handles.get(from);
+        Integer toHandle = handles.get(to);
+        return fromHandle != null && toHandle != null && outgoing[fromHandle].contains(toHandle, type);
+    }
 }
@@ -0,0 +1,187 @@
+package org.bihe.bean;
+
+import org.bihe.controll.MainController;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms of the public methods of Graph and of loading and writing files, and gauges of size
+ * of a graph. Graph itself is not timed: instrument wraps a graph in a MeteredGraph that times each call,
+ * and files are timed where they are loaded and saved, like this:
+ * <pre>
+ * GraphMetrics.time("BinarySnapshot.write", () -> {
+ *     BinarySnapshot.write(graph, path);
+ *     return null;
+ * });
+ * </pre>
+ * Metrics are recorded only if the program is started with -Dgraph.metrics=true. The switch is a constant,
+ * so when it is off graphs are not wrapped and the JIT removes timing of files. Gauges are read from
+ * statistics of the wrapped graph, so they do not add samples to the histograms
+ */
+public class GraphMetrics {
+    public static final boolean ENABLED = Boolean.getBoolean("graph.metrics");
+
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private GraphMetrics() {
+    }
+
+    /**
+     * Wraps a graph in a MeteredGraph if metrics are on
+     * @param graph Graph
+     * @return MeteredGraph of given graph, or the graph itself if metrics are off
+     */
+    public static Graph instrument(Graph graph) {
+        return ENABLED ? new MeteredGraph(graph) : graph;
+    }
+
+    /**
+     * Gives the graph that is wrapped by a MeteredGraph
+     * @param graph Graph
+     * @return Wrapped graph, or the graph itself if it is not a MeteredGraph
+     */
+    public static Graph unwrap(Graph graph) {
+        return (graph instanceof MeteredGraph) ? ((MeteredGraph) graph).getDelegate() : graph;
+    }
+
+    /**
+     * Calls an operation and records its latency in histogram of given name
+     * @param name Name of operation
+     * @param operation Operation
+     * @return Result of operation
+     * @throws E if the operation throws it
+     */
+    public static <T, E extends Exception> T time(String name, Timed<T, E> operation) throws E {
+        long begin = begin();
+        try {
+            return operation.call();
+        } finally {
+            end(name, begin);
+        }
+    }
+
+    /**
+     * Gives start time of a timed call
+     * @return Current time in nanoseconds, or zero if metrics are off
+     */
+    public static long begin() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Records latency of a call in histogram of given name
+     * @param name Name of method
+     * @param begin Time that begin gave
+     */
+    public static void end(String name, long begin) {
+        if (!ENABLED) return;
+        long nanos = System.nanoTime() - begin;
+        var histogram = histograms.get(name);
+        if (histogram == null) histogram = histograms.computeIfAbsent(name, k -> new LatencyHistogram());
+        histogram.record(nanos);
+    }
+
+    /**
+     * Gives histograms of all methods that are called
+     * @return Histograms sorted by name of method
+     */
+    public static Map<String, LatencyHistogram> histograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * Removes all histograms
+     */
+    public static void reset() {
+        histograms.clear();
+    }
+
+    /**
+     * Gives sizes of a graph: nodes of each type, edges of each type, and features of each type that are
+     * defined and that are added to posts and messages
+     * @param graph Graph
+     * @return Gauges sorted by name
+     */
+    public static Map<String, Long> gauges(Graph graph) {
+        var statistics = unwrap(graph).statistics();
+        Map<String, Long> gauges = new TreeMap<>();
+        for (var type : NodeType.values()) gauges.put("nodes." + type, statistics.getNumberOfNodes(type));
+        for (var type : EdgeType.values()) gauges.put("edges." + type, statistics.getNumberOfEdges(type));
+        for (var type : FeatureType.values()) {
+            long defined = MainController.features.values().stream().filter(f -> f.getType().equals(type)).count();
+            gauges.put("features." + type + ".defined", defined);
+            gauges.put("features." + type + ".added", statistics.getNumberOfFeatures(type));
+        }
+        return gauges;
+    }
+
+    /**
+     * Gives gauges of a graph and histograms as text, one line for each
+     * @param graph Graph, or null for just histograms
+     * @return Text
+     */
+    public static String toText(Graph graph) {
+        StringBuilder builder = new StringBuilder();
+        if (graph != null) {
+            for (var gauge : gauges(graph).entrySet())
+                builder.append(gauge.getKey()).append(": ").append(gauge.getValue()).append('\n');
+        }
+        for (var histogram : histograms().entrySet())
+            builder.append(histogram.getKey()).append(": ").append(histogram.getValue()).append('\n');
+        return builder.toString();
+    }
+
+    /**
+     * Gives gauges of a graph and histograms as JSON. Latencies are in nanoseconds
+     * @param graph Graph, or null for just histograms
+     * @return JSON object
+     */
+    public static String toJson(Graph graph) {
+        StringBuilder builder = new StringBuilder("{\"enabled\":").append(ENABLED).append(",\"gauges\":{");
+        if (graph != null) {
+            String separator = "";
+            for (var gauge : gauges(graph).entrySet()) {
+                builder.append(separator).append('"').append(gauge.getKey()).append("\":").append(gauge.getValue());
+                separator = ",";
+            }
+        }
+        builder.append("},\"histograms\":{");
+        String separator = "";
+        for (var entry : histograms().entrySet()) {
+            var histogram = entry.getValue();
+            builder.append(separator).append('"').append(entry.getKey()).append("\":{")
+                    .append("\"count\":").append(histogram.getCount())
+                    .append(",\"mean\":").append(Math.round(histogram.mean()))
+                    .append(",\"p50\":").append(histogram.percentile(50))
+                    .append(",\"p90\":").append(histogram.percentile(90))
+                    .append(",\"p99\":").append(histogram.percentile(99))
+                    .append(",\"p999\":").append(histogram.percentile(99.9))
+                    .append(",\"max\":").append(histogram.getMax()).append('}');
+            separator = ",";
+        }
+        return builder.append("}}").toString();
+    }
+
+    /**
+     * Writes metrics to a file, as JSON if its name ends with .json and as text otherwise
+     * @param graph Graph, or null for just histograms
+     * @param path Path of file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Graph graph, String path) throws IOException {
+        try (var writer = new FileWriter(path)) {
+            writer.write(path.endsWith(".json") ? toJson(graph) : toText(graph));
+        }
+    }
+
+    /**
+     * Operation that is timed, it can throw a checked exception
+     */
+    public interface Timed<T, E extends Exception> {
+        T call() throws E;
+    }
+}
@@ -0,0 +1,496 @@
+package org.bihe.bean;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * This class stores a read-only copy of a graph in compressed sparse row (CSR) form.
+ * Every node gets a dense int id and the edges of node i are stored in
+ * targets[offsets[i]] ... targets[offsets[i + 1] - 1] with their types in edgeTypes.
+ * Incoming edges are stored the same way in inOffsets, sources and inEdgeTypes
+ */
+public class GraphSnapshot {
+    private final Node[] nodes;
+    private final HashMap<String, Integer> index;
+    private final int[] offsets;
+    private final int[] targets;
+    private final byte[] edgeTypes;
+    private final int[] inOffsets;
+    private final int[] sources;
+    private final byte[] inEdgeTypes;
+    private final int epoch;
+    private volatile double[] betweenness;
+    private volatile BitSet mutualFollows;
+    private volatile GraphStatistics statistics;
+
+    /**
+     * GraphSnapshot Constructor
+     * @param graph Graph that is copied
+     */
+    GraphSnapshot(Graph graph) {
+        epoch = graph.epoch();
+        int capacity = graph.capacity();
+        int n = graph.nodeCount();
+        nodes = new Node[n];
+        index = new HashMap<>(n * 2);
+        int[] handles = new int[n];
+        int[] dense = new int[capacity];
+        for (int h = 0, i = 0; h < capacity; h++) {
+            if (graph.nodeAt(h) == null) continue;
+            nodes[i] = graph.nodeAt(h);
+            index.put(nodes[i].getId(), i);
+            handles[i] = h;
+            dense[h] = i++;
+        }
+
+        offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) offsets[i + 1] = offsets[i] + graph.outgoing(handles[i]).size();
+        int m = offsets[n];
+        targets = new int[m];
+        edgeTypes = new byte[m];
+        int[] inDegrees = new int[n + 1];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            var out = graph.outgoing(handles[i]);
+            for (int e = 0; e < out.size(); e++) {
+                int target = dense[out.node(e)];
+                targets[k] = target;
+                edgeTypes[k] = (byte) out.type(e).ordinal();
+                inDegrees[target + 1]++;
+                k++;
+            }
+        }
+
+        inOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) inOffsets[i + 1] = inOffsets[i] + inDegrees[i + 1];
+        sources = new int[m];
+        inEdgeTypes = new byte[m];
+        int[] next = Arrays.copyOf(inOffsets, n);
+        for (int i = 0; i < n; i++) {
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int slot = next[targets[e]]++;
+                sources[slot] = i;
+                inEdgeTypes[slot] = edgeTypes[e];
+            }
+        }
+    }
+
+    /**
+     * Gives version of graph that this snapshot is copied from
+     * @return Epoch of graph
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public int nodeCount() {
+        return nodes.length;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    /**
+     * Gives dense id of given node id
+     * @param nodeID id of node
+     * @return dense id or -1 if the node is not in this snapshot
+     */
+    public int indexOf(String nodeID) {
+        Integer i = index.get(nodeID);
+        return (i == null) ? -1 : i;
+    }
+
+    public Node getNode(int i) {
+        return nodes[i];
+    }
+
+    public int outDegree(int i) {
+        return offsets[i + 1] - offsets[i];
+    }
+
+    public int inDegree(int i) {
+        return inOffsets[i + 1] - inOffsets[i];
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] targets() {
+        return targets;
+    }
+
+    byte[] edgeTypes() {
+        return edgeTypes;
+    }
+
+    int[] inOffsets() {
+        return inOffsets;
+    }
+
+    int[] sources() {
+        return sources;
+    }
+
+    byte[] inEdgeTypes() {
+        return inEdgeTypes;
+    }
+
+    /**
+     * Gives dense id of given node id and checks that it is a user
+     * @param nodeID id of node
+     * @param message Message of exception if the node is not found
+     * @return dense id
+     */
+    private int userIndex(String nodeID, String message) {
+        int i = indexOf(nodeID);
+        if (i < 0) throw new NoSuchElementException(message);
+        if (!nodes[i].getType().equals(NodeType.user))
+            throw new IllegalArgumentException("Node " + nodeID + " type is not user!");
+        return i;
+    }
+
+    //-------------------------------------------------------------------------
+    //---------------------------------Traversals------------------------------
+
+    /**
+     * Breadth first search on outgoing edges from given dense id
+     * @param source dense id of start node
+     * @return distance of each node from source, -1 for unreachable nodes
+     */
+    public int[] BFS(int source) {
+        int[] distances = new int[nodes.length];
+        Arrays.fill(distances, -1);
+        int[] queue = new int[nodes.length];
+        int head = 0, tail = 0;
+        distances[source] = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int current = queue[head++];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                if (distances[neighbor] >= 0) continue;
+                distances[neighbor] = distances[current] + 1;
+                queue[tail++] = neighbor;
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Depth first search on outgoing edges from given dense id
+     * @param root dense id of root node
+     * @return Set bits are the visited nodes
+     */
+    public BitSet DFS(int root) {
+        BitSet visited = new BitSet(nodes.length);
+        int[] stack = new int[Math.max(1, targets.length + 1)];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int current = stack[--top];
+            if (visited.get(current)) continue;
+            visited.set(current);
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                if (!visited.get(targets[e])) stack[top++] = targets[e];
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Gets root that is node id and gives nodes that visited with DFS on root
+     * @param root node id
+     * @return Set of Visited nodes
+     */
+    public Set<Node> DFS(String root) {
+        int i = indexOf(root);
+        if (i < 0) throw new NoSuchElementException("Root node not be found!");
+        Set<Node> visited = new HashSet<>();
+        BitSet bits = DFS(i);
+        for (int v = bits.nextSetBit(0); v >= 0; v = bits.nextSetBit(v + 1)) visited.add(nodes[v]);
+        return visited;
+    }
+
+    /**
+     * Finds shortest path from first user to second user, and if there is no such path
+     * from second user to first user
+     * @param nodeID1 first node id
+     * @param nodeID2 second node id
+     * @return Ordered list of nodes of the path, empty if there is no path
+     */
+    public List<Node> findPath(String nodeID1, String nodeID2) {
+        int from = userIndex(nodeID1, "The source node not be found!");
+        int to = userIndex(nodeID2, "The destination node not be found!");
+        List<Node> path = findPath(from, to);
+        return path.isEmpty() ? findPath(to, from) : path;
+    }
+
+    /**
+     * Finds shortest path on outgoing edges by BFS that stops when destination is reached
+     * @param from dense id of first node
+     * @param to dense id of second node
+     * @return Ordered list of nodes of the path, empty if there is no path
+     */
+    private List<Node> findPath(int from, int to) {
+        int[] previous = new int[nodes.length];
+        Arrays.fill(previous, -1);
+        int[] queue = new int[nodes.length];
+        int head = 0, tail = 0;
+        previous[from] = from;
+        queue[tail++] = from;
+        while (head < tail && previous[to] < 0) {
+            int current = queue[head++];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                if (previous[neighbor] >= 0) continue;
+                previous[neighbor] = current;
+                queue[tail++] = neighbor;
+            }
+        }
+        LinkedList<Node> path = new LinkedList<>();
+        if (previous[to] < 0) return path;
+        for (int v = to; v != from; v = previous[v]) path.addFirst(nodes[v]);
+        path.addFirst(nodes[from]);
+        return path;
+    }
+
+    /**
+     * Gives each node that is at most maxDepth edges away from the seeds, with its distance. Nodes are
+     * given to the visitor level by level, and large levels are expanded on the common ForkJoinPool
+     * @param seedIDs Ids of seed nodes
+     * @param maxDepth Maximum distance of nodes
+     * @param types Types of edges that are followed
+     * @param direction Direction that edges are followed in
+     * @param visitor Gets each reached node and its distance
+     * @return Number of reached nodes, seeds included
+     */
+    public int neighbourhood(Collection<String> seedIDs, int maxDepth, Set<EdgeType> types, Direction direction,
+                             ObjIntConsumer<Node> visitor) {
+        int[] seeds = new int[seedIDs.size()];
+        int k = 0;
+        for (var id : seedIDs) {
+            seeds[k] = indexOf(id);
+            if (seeds[k++] < 0) throw new NoSuchElementException("Seed node " + id + " not be found!");
+        }
+        return new NeighbourhoodSearch(this, types, direction, ForkJoinPool.commonPool()).search(seeds, maxDepth, visitor);
+    }
+
+    /**
+     * Gives follow edges that their destination also follows their source, so both ends are friends.
+     * Bit e is set for outgoing edge index e. It is calculated once in O(V + E) and kept
+     * @return Bits of mutual follow edges
+     */
+    BitSet mutualFollows() {
+        BitSet result = mutualFollows;
+        if (result == null) {
+            synchronized (this) {
+                result = mutualFollows;
+                if (result == null) {
+                    result = new BitSet(targets.length);
+                    byte follow = (byte) EdgeType.follow.ordinal();
+                    int[] follower = new int[nodes.length];
+                    Arrays.fill(follower, -1);
+                    for (int i = 0; i < nodes.length; i++) {
+                        for (int e = inOffsets[i]; e < inOffsets[i + 1]; e++) {
+                            if (inEdgeTypes[e] == follow) follower[sources[e]] = i;
+                        }
+                        for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                            if (edgeTypes[e] == follow && follower[targets[e]] == i) result.set(e);
+                        }
+                    }
+                    mutualFollows = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    //-------------------------------------------------------------------------
+    //---------------------------------Components------------------------------
+
+    /**
+     * Labels each node with its weakly connected component (edges are used in both directions)
+     * @return Array that gives component label of each dense id
+     */
+    public int[] components() {
+        int[] component = new int[nodes.length];
+        Arrays.fill(component, -1);
+        int[] queue = new int[nodes.length];
+        int label = 0;
+        for (int root = 0; root < nodes.length; root++) {
+            if (component[root] >= 0) continue;
+            int head = 0, tail = 0;
+            component[root] = label;
+            queue[tail++] = root;
+            while (head < tail) {
+                int current = queue[head++];
+                for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                    if (component[targets[e]] < 0) {
+                        component[targets[e]] = label;
+                        queue[tail++] = targets[e];
+                    }
+                }
+                for (int e = inOffsets[current]; e < inOffsets[current + 1]; e++) {
+                    if (component[sources[e]] < 0) {
+                        component[sources[e]] = label;
+                        queue[tail++] = sources[e];
+                    }
+                }
+            }
+            label++;
+        }
+        return component;
+    }
+
+    /**
+     * Calculates all connected graphs in this snapshot
+     * @return Set of set of nodes that are connected
+     */
+    public Set<Set<Node>> connectedGraphs() {
+        HashMap<Integer, Set<Node>> groups = new HashMap<>();
+        int[] component = components();
+        for (int i = 0; i < nodes.length; i++) {
+            groups.computeIfAbsent(component[i], c -> new HashSet<>()).add(nodes[i]);
+        }
+        return new HashSet<>(groups.values());
+    }
+
+    /**
+     * Calculates the connected graph that has most number of users
+     * @return Set of nodes of this connected graph
+     */
+    public Set<Node> mostNumberOfUsersConnectedGraph() {
+        int[] component = components();
+        int[] users = new int[nodes.length];
+        int max = -1;
+        for (int i = 0; i < nodes.length; i++) {
+            if (!nodes[i].getType().equals(NodeType.user)) continue;
+            users[component[i]]++;
+            if (max < 0 || users[component[i]] > users[max]) max = component[i];
+        }
+        Set<Node> connectedGraph = new HashSet<>();
+        if (max < 0) return connectedGraph;
+        for (int i = 0; i < nodes.length; i++) {
+            if (component[i] == max) connectedGraph.add(nodes[i]);
+        }
+        return connectedGraph;
+    }
+
+    //-------------------------------------------------------------------------
+    //----------------------------------Density--------------------------------
+
+    /**
+     * Counts nodes and edges of each type and relations between users and between users and posts.
+     * It is calculated once in O(V + E) and kept
+     * @return Statistics of snapshot
+     */
+    public GraphStatistics statistics() {
+        GraphStatistics result = statistics;
+        if (result == null) {
+            synchronized (this) {
+                result = statistics;
+                if (result == null) {
+                    result = countStatistics();
+                    statistics = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private GraphStatistics countStatistics() {
+        var statistics = new GraphStatistics();
+        long userRelations = 0, postRelations = 0;
+        int[] seen = new int[nodes.length];
+        int follow = EdgeType.follow.ordinal();
+        var types = EdgeType.values();
+        int stamp = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            statistics.addNodes(nodes[i].getType(), 1);
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) statistics.addEdges(types[edgeTypes[e]], 1);
+            if (!nodes[i].getType().equals(NodeType.user)) continue;
+            stamp++;
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int target = targets[e];
+                if (seen[target] == stamp) continue;
+                NodeType type = nodes[target].getType();
+                if (type.equals(NodeType.user) && edgeTypes[e] == follow) {
+                    seen[target] = stamp;
+                    userRelations++;
+                } else if (type.equals(NodeType.post)) {
+                    seen[target] = stamp;
+                    postRelations++;
+                }
+            }
+            for (int e = inOffsets[i]; e < inOffsets[i + 1]; e++) {
+                int source = sources[e];
+                if (seen[source] == stamp || inEdgeTypes[e] != follow) continue;
+                seen[source] = stamp;
+                userRelations++;
+            }
+        }
+        statistics.addRelations(userRelations, postRelations);
+        return statistics;
+    }
+
+    /**
+     * Density just between users
+     *
+     * @return Density percent
+     */
+    public float densityOfUsersPercent() {
+        return statistics().densityOfUsersPercent();
+    }
+
+    /**
+     * Density Just between users and posts
+     *
+     * @return Density percent
+     */
+    public float densityJustBetweenUsersAndPostsPercent() {
+        return statistics().densityJustBetweenUsersAndPostsPercent();
+    }
+
+    /**
+     * Density between Users and Posts
+     *
+     * @return Density percent
+     */
+    public float densityTotalBetweenUsersAndPostsPercent() {
+        return statistics().densityTotalBetweenUsersAndPostsPercent();
+    }
+
+    //-------------------------------------------------------------------------
+    //--------------------------------Betweenness------------------------------
+
+    /**
+     * Gives betweenness centrality of all nodes. It is calculated once with Brandes algorithm on the
+     * common ForkJoinPool and kept for next calls
+     * @return Array that gives betweenness centrality of each dense id
+     */
+    public double[] betweennessCentrality() {
+        double[] result = betweenness;
+        if (result == null) {
+            synchronized (this) {
+                result = betweenness;
+                if (result == null) {
+                    result = BetweennessCentrality.calculate(this, ForkJoinPool.commonPool());
+                    betweenness = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets id of user and gives betweenness centrality of this user
+     * @param userID id of user
+     * @return betweenness centrality
+     */
+    public double betweennessCentrality(String userID) {
+        return betweennessCentrality()[userIndex(userID, "This node not be found!")];
+    }
+}
@@ -0,0 +1,129 @@
+package org.bihe.bean;
+
+/**
+ * Stores counts of a graph that densities are calculated from: number of nodes of each type, number of
+ * edges of each type and number of relations. A relation is a pair of nodes that has at least one edge,
+ * so two edges between the same nodes are one relation. Relations between users are counted for both
+ * users, as each user counts the users that it follows or is followed by. Features of each type are counted
+ * once for each post or message that has them.
+ * <p>
+ * Graph keeps its statistics up to date when nodes and edges are added and removed, so densities are
+ * read in O(1)
+ */
+public class GraphStatistics {
+    private final long[] nodes;
+    private final long[] edges;
+    private final long[] features;
+    private long userRelations;
+    private long postRelations;
+
+    GraphStatistics() {
+        nodes = new long[NodeType.values().length];
+        edges = new long[EdgeType.values().length];
+        features = new long[FeatureType.values().length];
+    }
+
+    /**
+     * Copy Constructor
+     * @param other Statistics that are copied
+     */
+    public GraphStatistics(GraphStatistics other) {
+        nodes = other.nodes.clone();
+        edges = other.edges.clone();
+        features = other.features.clone();
+        userRelations = other.userRelations;
+        postRelations = other.postRelations;
+    }
+
+    void addNodes(NodeType type, long delta) {
+        nodes[type.ordinal()] += delta;
+    }
+
+    void addEdges(EdgeType type, long delta) {
+        edges[type.ordinal()] += delta;
+    }
+
+    void addFeatures(FeatureType type, long delta) {
+        features[type.ordinal()] += delta;
+    }
+
+    /**
+     * Adds given numbers to numbers of relations
+     * @param users Number that is added to relations between users
+     * @param posts Number that is added to relations between users and posts
+     */
+    void addRelations(long users, long posts) {
+        userRelations += users;
+        postRelations += posts;
+    }
+
+    public long getNumberOfNodes(NodeType type) {
+        return nodes[type.ordinal()];
+    }
+
+    public long getNumberOfEdges(EdgeType type) {
+        return edges[type.ordinal()];
+    }
+
+    /**
+     * Gives number of features of given type that are added to posts and messages
+     * @param type Type of feature
+     * @return Number of added features
+     */
+    public long getNumberOfFeatures(FeatureType type) {
+        return features[type.ordinal()];
+    }
+
+    /**
+     * Gives sum of number of users that each user follows or is followed by
+     * @return Number of relations between users
+     */
+    public long getUserRelations() {
+        return userRelations;
+    }
+
+    /**
+     * Gives sum of number of posts that each user likes or comments on
+     * @return Number of relations between users and posts
+     */
+    public long getPostRelations() {
+        return postRelations;
+    }
+
+    /**
+     * Density just between users
+     * @return Density percent
+     */
+    public float densityOfUsersPercent() {
+        long users = getNumberOfNodes(NodeType.user);
+        return (float) (Math.round(((float) userRelations / users / users) * 100 * 100.0) / 100.0);
+    }
+
+    /**
+     * Density Just between users and posts
+     * @return Density percent
+     */
+    public float densityJustBetweenUsersAndPostsPercent() {
+        long users = getNumberOfNodes(NodeType.user);
+        long posts = getNumberOfNodes(NodeType.post);
+        return (float) (Math.round((float) postRelations / (posts * users) * 100 * 100.0) / 100.0);
+    }
+
+    /**
+     * Density between Users and Posts
+     * @return Density percent
+     */
+    public float densityTotalBetweenUsersAndPostsPercent() {
+        long all = getNumberOfNodes(NodeType.user) + getNumberOfNodes(NodeType.post);
+        return (float) (Math.round((float) (userRelations + postRelations) / all / all * 100 * 100.0) / 100.0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (var type : NodeType.values()) builder.append(type).append("s: ").append(getNumberOfNodes(type)).append(", ");
+        for (var type : EdgeType.values()) builder.append(type).append(" edges: ").append(getNumberOfEdges(type)).append(", ");
+        return builder.append("user relations: ").append(userRelations)
+                .append(", post relations: ").append(postRelations).toString();
+    }
+}
@@ -0,0 +1,106 @@
+package org.bihe.bean;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds that many threads record into without a lock. Values are counted
+ * in buckets of log-linear size like HdrHistogram: each power of two is split into 16 buckets, so a
+ * percentile is at most 1/16 bigger than the real value. Values below 32 have their own buckets
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+    private final AtomicLong count;
+    private final AtomicLong total;
+    private final AtomicLong max;
+
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        count = new AtomicLong();
+        total = new AtomicLong();
+        max = new AtomicLong();
+    }
+
+    /**
+     * Records a value
+     * @param nanos Latency in nanoseconds, negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        if (value > max.get()) max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gives the biggest value that is counted in a bucket
+     */
+    private static long highestOf(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Gives the value that given percent of recorded values are not bigger than
+     * @param percent Percent between 0 and 100
+     * @return Latency in nanoseconds, zero if nothing is recorded
+     */
+    public long percentile(double percent) {
+        long all = count.get();
+        if (all == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(all * percent / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return Math.min(highestOf(i), max.get());
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gives average of recorded values
+     * @return Mean latency in nanoseconds
+     */
+    public double mean() {
+        long all = count.get();
+        return (all == 0) ? 0 : (double) total.get() / all;
+    }
+
+    /**
+     * Removes all recorded values. Values that are recorded at the same time may be kept in part
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count: %d, mean: %.1f us, p50: %.1f us, p99: %.1f us, p99.9: %.1f us, max: %.1f us",
+                getCount(), mean() / 1e3, percentile(50) / 1e3, percentile(99) / 1e3, percentile(99.9) / 1e3, max.get() / 1e3);
+    }
+}
@@ -0,0 +1,102 @@
+package org.bihe.bean;
+
+import java.util.*;
+
+/**
+ * Keeps count of each item in order, so the items that have the biggest counts are read without
+ * counting again. Items with equal counts keep the order that they entered the leaderboard
+ * @param <T> Type of items
+ */
+public class Leaderboard<T> {
+    private final HashMap<T, Entry<T>> entries;
+    private final TreeSet<Entry<T>> ordered;
+    private long sequence;
+
+    public Leaderboard() {
+        entries = new HashMap<>();
+        ordered = new TreeSet<>(Comparator.<Entry<T>>comparingInt(e -> -e.count).thenComparingLong(e -> e.order));
+    }
+
+    /**
+     * Adds one to count of given item
+     * @param item Item
+     */
+    public void increment(T item) {
+        add(item, 1);
+    }
+
+    /**
+     * Subtracts one from count of given item
+     * @param item Item
+     */
+    public void decrement(T item) {
+        add(item, -1);
+    }
+
+    /**
+     * Adds given number to count of given item. The item leaves the leaderboard when its count reaches zero
+     * @param item Item
+     * @param number Number that is added, can be negative
+     */
+    public void add(T item, int number) {
+        var entry = entries.get(item);
+        if (entry == null) {
+            if (number <= 0) return;
+            entry = new Entry<>(item, sequence++);
+            entries.put(item, entry);
+        } else {
+            ordered.remove(entry);
+        }
+        entry.count += number;
+        if (entry.count > 0) ordered.add(entry);
+        else entries.remove(item);
+    }
+
+    /**
+     * Removes given item from leaderboard
+     * @param item Item
+     */
+    public void remove(T item) {
+        var entry = entries.remove(item);
+        if (entry != null) ordered.remove(entry);
+    }
+
+    /**
+     * Gives count of given item
+     * @param item Item
+     * @return Count of item, zero if it is not in leaderboard
+     */
+    public int count(T item) {
+        var entry = entries.get(item);
+        return (entry == null) ? 0 : entry.count;
+    }
+
+    /**
+     * Gives the items that have the biggest counts
+     * @param k Number of items
+     * @return At most k items in descending order of their counts
+     */
+    public List<T> top(int k) {
+        List<T> top = new ArrayList<>(Math.min(k, entries.size()));
+        for (var entry : ordered) {
+            if (top.size() == k) break;
+            top.add(entry.item);
+        }
+        return top;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static class Entry<T> {
+        private final T item;
+        private final long order;
+        private int count;
+
+        private Entry(T item, long order) {
+            this.item = item;
+            this.order = order;
+        }
+    }
+}
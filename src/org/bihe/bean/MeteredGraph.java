@@ -0,0 +1,336 @@
+package org.bihe.bean;
+
+import org.bihe.exception.ExistElementException;
+
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Graph that records latency of each public method of another graph in GraphMetrics. It has the same methods
+ * as Graph and passes each call to the other graph, so a call is recorded once under the name of its method
+ * even when the other graph calls its own methods inside it. Getters, epochs and toString are not timed.
+ * The other graph can be a ConcurrentGraph, so its time includes waiting for locks.
+ * <p>
+ * Nodes and edges of this object itself are never used, all of them are in the other graph
+ */
+public class MeteredGraph extends Graph {
+    private final Graph delegate;
+
+    /**
+     * MeteredGraph Constructor
+     * @param delegate Graph that calls are passed to
+     */
+    public MeteredGraph(Graph delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Gives the graph that calls are passed to
+     * @return Graph
+     */
+    public Graph getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void addNode(String id, String label, String type) throws ExistElementException {
+        GraphMetrics.time("Graph.addNode", () -> {
+            delegate.addNode(id, label, type);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean removeNode(String id) {
+        return GraphMetrics.time("Graph.removeNode", () -> delegate.removeNode(id));
+    }
+
+    @Override
+    public int removeNodes(Collection<String> ids) {
+        return GraphMetrics.time("Graph.removeNodes", () -> delegate.removeNodes(ids));
+    }
+
+    @Override
+    public void addEdge(String from, String to, String type) {
+        GraphMetrics.time("Graph.addEdge", () -> {
+            delegate.addEdge(from, to, type);
+            return null;
+        });
+    }
+
+    @Override
+    public String[] addNodes(String[] ids, String[] labels, NodeType[] types, int count) {
+        return GraphMetrics.time("Graph.addNodes", () -> delegate.addNodes(ids, labels, types, count));
+    }
+
+    @Override
+    public String[] addEdges(String[] from, String[] to, EdgeType[] types, int count) {
+        return GraphMetrics.time("Graph.addEdges", () -> delegate.addEdges(from, to, types, count));
+    }
+
+    @Override
+    public BatchResult applyBatch(MutationBatch batch) {
+        return GraphMetrics.time("Graph.applyBatch", () -> delegate.applyBatch(batch));
+    }
+
+    @Override
+    public boolean removeEdge(String from, String to, String type) {
+        return GraphMetrics.time("Graph.removeEdge", () -> delegate.removeEdge(from, to, type));
+    }
+
+    @Override
+    public void addFeature(String nodeID, int featureID) throws ExistElementException {
+        GraphMetrics.time("Graph.addFeature", () -> {
+            delegate.addFeature(nodeID, featureID);
+            return null;
+        });
+    }
+
+    @Override
+    public String[] addFeatures(String[] nodeIDs, int[] featureIDs, int count) {
+        return GraphMetrics.time("Graph.addFeatures", () -> delegate.addFeatures(nodeIDs, featureIDs, count));
+    }
+
+    @Override
+    public boolean removeFeature(String nodeID, int featureID) {
+        return GraphMetrics.time("Graph.removeFeature", () -> delegate.removeFeature(nodeID, featureID));
+    }
+
+    @Override
+    public boolean removeFeatureFromAllNodes(int featureID) {
+        return GraphMetrics.time("Graph.removeFeatureFromAllNodes",
+                () -> delegate.removeFeatureFromAllNodes(featureID));
+    }
+
+    @Override
+    public HashMap<String, Integer> calculateFollowersOrLikes(NodeType nodeType, EdgeType edgeType) {
+        return GraphMetrics.time("Graph.calculateFollowersOrLikes",
+                () -> delegate.calculateFollowersOrLikes(nodeType, edgeType));
+    }
+
+    @Override
+    public HashMap<String, Integer> calculateHashtagsOrMentions(FeatureType featureType) {
+        return GraphMetrics.time("Graph.calculateHashtagsOrMentions",
+                () -> delegate.calculateHashtagsOrMentions(featureType));
+    }
+
+    @Override
+    public String[] threeTop(HashMap<String, Integer> calculateItems) {
+        return GraphMetrics.time("Graph.threeTop", () -> delegate.threeTop(calculateItems));
+    }
+
+    @Override
+    public String[] topFollowersOrLikes(NodeType nodeType, EdgeType edgeType, int k) {
+        return GraphMetrics.time("Graph.topFollowersOrLikes",
+                () -> delegate.topFollowersOrLikes(nodeType, edgeType, k));
+    }
+
+    @Override
+    public String[] topHashtagsOrMentions(FeatureType featureType, int k) {
+        return GraphMetrics.time("Graph.topHashtagsOrMentions", () -> delegate.topHashtagsOrMentions(featureType, k));
+    }
+
+    @Override
+    public List<String> listOfNodesWithFeature(int featureID) {
+        return GraphMetrics.time("Graph.listOfNodesWithFeature", () -> delegate.listOfNodesWithFeature(featureID));
+    }
+
+    @Override
+    public int numberOfNodesWithFeature(int featureID) {
+        return GraphMetrics.time("Graph.numberOfNodesWithFeature", () -> delegate.numberOfNodesWithFeature(featureID));
+    }
+
+    @Override
+    public HashMap<String, Integer> coOccurringFeatures(int featureID, FeatureType featureType) {
+        return GraphMetrics.time("Graph.coOccurringFeatures",
+                () -> delegate.coOccurringFeatures(featureID, featureType));
+    }
+
+    @Override
+    public List<String> listOfFriends(String userID) {
+        return GraphMetrics.time("Graph.listOfFriends", () -> delegate.listOfFriends(userID));
+    }
+
+    @Override
+    public List<String> listOfFollowers(String userID) {
+        return GraphMetrics.time("Graph.listOfFollowers", () -> delegate.listOfFollowers(userID));
+    }
+
+    @Override
+    public List<String> listOfLikers(String nodeID) {
+        return GraphMetrics.time("Graph.listOfLikers", () -> delegate.listOfLikers(nodeID));
+    }
+
+    @Override
+    public List<String> listOfFollowings(String userID) {
+        return GraphMetrics.time("Graph.listOfFollowings", () -> delegate.listOfFollowings(userID));
+    }
+
+    @Override
+    public List<String> listOfPosts(String userID) {
+        return GraphMetrics.time("Graph.listOfPosts", () -> delegate.listOfPosts(userID));
+    }
+
+    @Override
+    public String suggestedItem(String userID, NodeType type) {
+        return GraphMetrics.time("Graph.suggestedItem", () -> delegate.suggestedItem(userID, type));
+    }
+
+    @Override
+    public List<Recommendation> recommend(String userID, NodeType type, int n) {
+        return GraphMetrics.time("Graph.recommend", () -> delegate.recommend(userID, type, n));
+    }
+
+    @Override
+    public Map<String, List<Recommendation>> recommendAll(NodeType type, int n) {
+        return GraphMetrics.time("Graph.recommendAll", () -> delegate.recommendAll(type, n));
+    }
+
+    @Override
+    public int numberOfAllPosts() {
+        return GraphMetrics.time("Graph.numberOfAllPosts", delegate::numberOfAllPosts);
+    }
+
+    @Override
+    public LinkedList<Integer> numbersOfRelationsBetweenEachUserWithOtherUsers() {
+        return GraphMetrics.time("Graph.numbersOfRelationsBetweenEachUserWithOtherUsers",
+                delegate::numbersOfRelationsBetweenEachUserWithOtherUsers);
+    }
+
+    @Override
+    public LinkedList<Integer> numbersOfRelationsBetweenEachUserWithPosts() {
+        return GraphMetrics.time("Graph.numbersOfRelationsBetweenEachUserWithPosts",
+                delegate::numbersOfRelationsBetweenEachUserWithPosts);
+    }
+
+    @Override
+    public float densityOfUsersPercent() {
+        return GraphMetrics.time("Graph.densityOfUsersPercent", delegate::densityOfUsersPercent);
+    }
+
+    @Override
+    public float densityJustBetweenUsersAndPostsPercent() {
+        return GraphMetrics.time("Graph.densityJustBetweenUsersAndPostsPercent",
+                delegate::densityJustBetweenUsersAndPostsPercent);
+    }
+
+    @Override
+    public float densityTotalBetweenUsersAndPostsPercent() {
+        return GraphMetrics.time("Graph.densityTotalBetweenUsersAndPostsPercent",
+                delegate::densityTotalBetweenUsersAndPostsPercent);
+    }
+
+    @Override
+    public GraphStatistics statistics() {
+        return GraphMetrics.time("Graph.statistics", delegate::statistics);
+    }
+
+    @Override
+    public Set<Node> findPath(String nodeID1, String nodeID2, byte in) {
+        return GraphMetrics.time("Graph.findPath", () -> delegate.findPath(nodeID1, nodeID2, in));
+    }
+
+    @Override
+    public List<Node> findPathDFS(String nodeID1, String nodeID2, int maxDepth) {
+        return GraphMetrics.time("Graph.findPathDFS", () -> delegate.findPathDFS(nodeID1, nodeID2, maxDepth));
+    }
+
+    @Override
+    public int neighbourhood(Collection<String> seedIDs, int maxDepth, Set<EdgeType> types,
+                            Direction direction, ObjIntConsumer<Node> visitor) {
+        return GraphMetrics.time("Graph.neighbourhood",
+                () -> delegate.neighbourhood(seedIDs, maxDepth, types, direction, visitor));
+    }
+
+    @Override
+    public Set<Node> DFS(String root) {
+        return GraphMetrics.time("Graph.DFS", () -> delegate.DFS(root));
+    }
+
+    @Override
+    public Set<Set<Node>> connectedGraphs() {
+        return GraphMetrics.time("Graph.connectedGraphs", delegate::connectedGraphs);
+    }
+
+    @Override
+    public Set<Node> mostNumberOfUsersConnectedGraph() {
+        return GraphMetrics.time("Graph.mostNumberOfUsersConnectedGraph", delegate::mostNumberOfUsersConnectedGraph);
+    }
+
+    @Override
+    public Set<Node> getShortestPath(String first, String second) {
+        return GraphMetrics.time("Graph.getShortestPath", () -> delegate.getShortestPath(first, second));
+    }
+
+    @Override
+    public HashMap<Pair<Node, Node>, Set<Node>> getShortestPathsForPairNodesOfGraph() {
+        return GraphMetrics.time("Graph.getShortestPathsForPairNodesOfGraph",
+                delegate::getShortestPathsForPairNodesOfGraph);
+    }
+
+    @Override
+    public HashMap<Pair<Node, Node>, Set<Node>> getShortestPathsForPairNodesOfConnectedGraph() {
+        return GraphMetrics.time("Graph.getShortestPathsForPairNodesOfConnectedGraph",
+                delegate::getShortestPathsForPairNodesOfConnectedGraph);
+    }
+
+    @Override
+    public double betweennessCentrality(String userID) {
+        return GraphMetrics.time("Graph.betweennessCentrality", () -> delegate.betweennessCentrality(userID));
+    }
+
+    @Override
+    public GraphSnapshot snapshot() {
+        return GraphMetrics.time("Graph.snapshot", delegate::snapshot);
+    }
+
+    @Override
+    public int epoch() {
+        return delegate.epoch();
+    }
+
+    @Override
+    public PinnedSnapshot pin() {
+        return GraphMetrics.time("Graph.pin", delegate::pin);
+    }
+
+    @Override
+    public SortedSet<Integer> pinnedEpochs() {
+        return delegate.pinnedEpochs();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    @Override
+    public String adjacencyListToString() {
+        return delegate.adjacencyListToString();
+    }
+
+    @Override
+    public HashMap<String, Node> getNodes() {
+        return delegate.getNodes();
+    }
+
+    @Override
+    public List<Edge> getEdges(String nodeID) {
+        return delegate.getEdges(nodeID);
+    }
+
+    @Override
+    public HashMap<Node, List<Edge>> getAdjacencyList() {
+        return delegate.getAdjacencyList();
+    }
+
+    @Override
+    public HashMap<Node, List<Feature>> getFeatures() {
+        return delegate.getFeatures();
+    }
+
+    @Override
+    public RecommendationCache getSuggestionCache() {
+        return delegate.getSuggestionCache();
+    }
+}
@@ -0,0 +1,159 @@
+package org.bihe.bean;
+
+import java.util.Arrays;
+
+/**
+ * Operations that are applied to a graph together by Graph.applyBatch. Operations are stored in parallel
+ * arrays and each operation is known by its index, that is also its index in the result of the batch.
+ * <p>
+ * A batch is applied in three steps: first nodes are added, then edges are added and removed grouped by
+ * their source node, and then features are added and removed. Operations of one step keep their order, so
+ * an edge can use a node of the same batch and a feature can use a post of the same batch
+ */
+public class MutationBatch {
+    static final byte ADD_NODE = 0;
+    static final byte ADD_EDGE = 1;
+    static final byte REMOVE_EDGE = 2;
+    static final byte ADD_FEATURE = 3;
+    static final byte REMOVE_FEATURE = 4;
+
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+    private static final EdgeType[] EDGE_TYPES = EdgeType.values();
+
+    private byte[] operations;
+    private String[] first;
+    private String[] second;
+    private int[] arguments;
+    private int size;
+
+    public MutationBatch() {
+        this(16);
+    }
+
+    /**
+     * MutationBatch Constructor
+     * @param capacity Number of operations that are stored before arrays grow
+     */
+    public MutationBatch(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity cannot be negative!");
+        operations = new byte[capacity];
+        first = new String[capacity];
+        second = new String[capacity];
+        arguments = new int[capacity];
+    }
+
+    /**
+     * Adds an operation that adds a node
+     * @param id Id of node
+     * @param label Label of node
+     * @param type Type of node
+     * @return Index of operation
+     */
+    public int addNode(String id, String label, NodeType type) {
+        return append(ADD_NODE, id, label, type.ordinal());
+    }
+
+    /**
+     * Adds an operation that adds an edge
+     * @param from Id of source node
+     * @param to Id of destination node
+     * @param type Type of edge
+     * @return Index of operation
+     */
+    public int addEdge(String from, String to, EdgeType type) {
+        return append(ADD_EDGE, from, to, type.ordinal());
+    }
+
+    /**
+     * Adds an operation that removes an edge
+     * @param from Id of source node
+     * @param to Id of destination node
+     * @param type Type of edge
+     * @return Index of operation
+     */
+    public int removeEdge(String from, String to, EdgeType type) {
+        return append(REMOVE_EDGE, from, to, type.ordinal());
+    }
+
+    /**
+     * Adds an operation that adds a feature to a post or message
+     * @param nodeID Id of post or message
+     * @param featureID Id of feature
+     * @return Index of operation
+     */
+    public int addFeature(String nodeID, int featureID) {
+        return append(ADD_FEATURE, nodeID, null, featureID);
+    }
+
+    /**
+     * Adds an operation that removes a feature from a post or message
+     * @param nodeID Id of post or message
+     * @param featureID Id of feature
+     * @return Index of operation
+     */
+    public int removeFeature(String nodeID, int featureID) {
+        return append(REMOVE_FEATURE, nodeID, null, featureID);
+    }
+
+    private int append(byte operation, String first, String second, int argument) {
+        if (size == operations.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            operations = Arrays.copyOf(operations, capacity);
+            this.first = Arrays.copyOf(this.first, capacity);
+            this.second = Arrays.copyOf(this.second, capacity);
+            arguments = Arrays.copyOf(arguments, capacity);
+        }
+        operations[size] = operation;
+        this.first[size] = first;
+        this.second[size] = second;
+        arguments[size] = argument;
+        return size++;
+    }
+
+    /**
+     * Removes all operations and keeps the arrays, so the batch can be filled again
+     */
+    public void clear() {
+        Arrays.fill(first, 0, size, null);
+        Arrays.fill(second, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    byte operation(int i) {
+        return operations[i];
+    }
+
+    /**
+     * Gives id of node, source node or post of an operation
+     */
+    String first(int i) {
+        return first[i];
+    }
+
+    /**
+     * Gives label of node or id of destination node of an operation
+     */
+    String second(int i) {
+        return second[i];
+    }
+
+    NodeType nodeType(int i) {
+        return NODE_TYPES[arguments[i]];
+    }
+
+    EdgeType edgeType(int i) {
+        return EDGE_TYPES[arguments[i]];
+    }
+
+    int featureID(int i) {
+        return arguments[i];
+    }
+}
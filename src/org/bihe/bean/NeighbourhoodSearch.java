@@ -0,0 +1,173 @@
+package org.bihe.bean;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Finds all nodes that are at most k edges away from a group of seed nodes of a snapshot. One BFS is run
+ * from all seeds together, level by level, on edges of chosen types in chosen direction. Nodes of each
+ * level are given to a visitor with their distance as soon as the level is finished, so no collection of
+ * nodes is built.
+ * <p>
+ * Large levels are expanded in parallel: frontier is split between tasks of a ForkJoinPool and each task
+ * collects neighbours that are not visited yet. Then the lists of tasks are merged in order by one thread,
+ * so the result does not depend on number of threads. A search is run by one thread at a time
+ */
+public class NeighbourhoodSearch {
+    private static final int FRONTIER_PER_TASK = 1024;
+
+    private final GraphSnapshot snapshot;
+    private final int typeMask;
+    private final Direction direction;
+    private final ForkJoinPool pool;
+    private final BitSet visited;
+
+    /**
+     * NeighbourhoodSearch Constructor
+     * @param snapshot Snapshot of graph
+     * @param types Types of edges that are followed
+     * @param direction Direction that edges are followed in
+     * @param pool Pool that expands large levels, null for one thread
+     */
+    public NeighbourhoodSearch(GraphSnapshot snapshot, Set<EdgeType> types, Direction direction, ForkJoinPool pool) {
+        this.snapshot = snapshot;
+        int mask = 0;
+        for (var type : types) mask |= 1 << type.ordinal();
+        this.typeMask = mask;
+        this.direction = direction;
+        this.pool = pool;
+        this.visited = new BitSet(snapshot.nodeCount());
+    }
+
+    /**
+     * Runs the search. Seeds have distance zero and each node is given to the visitor once, with its
+     * smallest distance from the seeds
+     * @param seeds Dense ids of seed nodes
+     * @param maxDepth Maximum distance of nodes
+     * @param visitor Gets each reached node and its distance
+     * @return Number of reached nodes, seeds included
+     * @throws IllegalArgumentException if maxDepth is negative
+     */
+    public int search(int[] seeds, int maxDepth, ObjIntConsumer<Node> visitor) {
+        if (maxDepth < 0) throw new IllegalArgumentException("Depth cannot be negative!");
+        visited.clear();
+        int[] frontier = new int[seeds.length];
+        int size = 0;
+        for (int seed : seeds) {
+            if (visited.get(seed)) continue;
+            visited.set(seed);
+            frontier[size++] = seed;
+        }
+        int reached = 0;
+        for (int depth = 0; size > 0; depth++) {
+            for (int i = 0; i < size; i++) visitor.accept(snapshot.getNode(frontier[i]), depth);
+            reached += size;
+            if (depth == maxDepth) break;
+            int[][] found = expand(frontier, size);
+            frontier = merge(found);
+            size = frontier.length;
+        }
+        return reached;
+    }
+
+    /**
+     * Gives neighbours of frontier that are not visited. Each task writes its neighbours in its own slot
+     */
+    private int[][] expand(int[] frontier, int size) {
+        int tasks = (size + FRONTIER_PER_TASK - 1) / FRONTIER_PER_TASK;
+        int[][] found = new int[tasks][];
+        if (pool == null || tasks == 1) {
+            for (int t = 0; t < tasks; t++) found[t] = neighbours(frontier, t * FRONTIER_PER_TASK, Math.min(size, (t + 1) * FRONTIER_PER_TASK));
+        } else {
+            pool.invoke(new Level(frontier, size, 0, tasks, found));
+        }
+        return found;
+    }
+
+    /**
+     * Visits the neighbours that tasks found, in order of tasks, and gives them as the next frontier. A
+     * node that more than one task found is kept once
+     */
+    private int[] merge(int[][] found) {
+        int total = 0;
+        for (var part : found) total += part[0];
+        int[] next = new int[total];
+        int size = 0;
+        for (var part : found) {
+            for (int i = 1; i <= part[0]; i++) {
+                int node = part[i];
+                if (visited.get(node)) continue;
+                visited.set(node);
+                next[size++] = node;
+            }
+        }
+        return Arrays.copyOf(next, size);
+    }
+
+    /**
+     * Collects neighbours of a part of frontier that are not visited. Visited nodes are only read here,
+     * so tasks can run at the same time
+     * @return Array that its first item is number of neighbours and the next items are the neighbours
+     */
+    private int[] neighbours(int[] frontier, int from, int to) {
+        int[] result = new int[16];
+        int size = 0;
+        int[] offsets = snapshot.offsets(), targets = snapshot.targets();
+        byte[] types = snapshot.edgeTypes();
+        int[] inOffsets = snapshot.inOffsets(), sources = snapshot.sources();
+        byte[] inTypes = snapshot.inEdgeTypes();
+        boolean outgoing = !direction.equals(Direction.INCOMING);
+        boolean incoming = !direction.equals(Direction.OUTGOING);
+        for (int i = from; i < to; i++) {
+            int node = frontier[i];
+            if (outgoing) {
+                for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                    if ((typeMask & (1 << types[e])) == 0 || visited.get(targets[e])) continue;
+                    if (++size == result.length) result = Arrays.copyOf(result, size * 2);
+                    result[size] = targets[e];
+                }
+            }
+            if (incoming) {
+                for (int e = inOffsets[node]; e < inOffsets[node + 1]; e++) {
+                    if ((typeMask & (1 << inTypes[e])) == 0 || visited.get(sources[e])) continue;
+                    if (++size == result.length) result = Arrays.copyOf(result, size * 2);
+                    result[size] = sources[e];
+                }
+            }
+        }
+        result[0] = size;
+        return result;
+    }
+
+    /**
+     * Task that expands parts of frontier between two part numbers
+     */
+    @SuppressWarnings("serial")
+    private class Level extends RecursiveAction {
+        private final int[] frontier;
+        private final int size;
+        private final int from;
+        private final int to;
+        private final int[][] found;
+
+        private Level(int[] frontier, int size, int from, int to, int[][] found) {
+            this.frontier = frontier;
+            this.size = size;
+            this.from = from;
+            this.to = to;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Level(frontier, size, from, middle, found), new Level(frontier, size, middle, to, found));
+                return;
+            }
+            found[from] = neighbours(frontier, from * FRONTIER_PER_TASK, Math.min(size, (from + 1) * FRONTIER_PER_TASK));
+        }
+    }
+}
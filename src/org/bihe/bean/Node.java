@@ -42,5 +42,10 @@ public class Node {
         return this.id.equals(node.id);
     }
 
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
 
 }
@@ -40,7 +40,7 @@ public class Pair<F, S> {
 
     @Override
     public int hashCode() {
-        return Objects.hash(first, second);
+        return Objects.hashCode(first) + Objects.hashCode(second);
     }
 
     @Override
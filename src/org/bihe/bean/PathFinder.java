@@ -0,0 +1,193 @@
+package org.bihe.bean;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Finds paths between nodes of a graph. Shortest paths are found with a bidirectional BFS: one search goes
+ * forward from the source over outgoing edges and the other goes backward from the destination over
+ * incoming edges, and the search stops at the level where they meet. Other paths are found with a DFS that
+ * keeps its own stack, so long chains do not overflow the call stack. State of searches is kept in arrays
+ * that are indexed by handle and reused by next queries, and nodes that BFS visits are marked with the
+ * number of the query, so the arrays are not cleared.
+ * <p>
+ * A path finder is used by one thread at a time. Arrays grow when the graph gets new handles
+ */
+class PathFinder {
+    private final Graph graph;
+    private int[] forwardMark;
+    private int[] backwardMark;
+    private int[] forwardParent;
+    private int[] backwardParent;
+    private int[] forwardQueue;
+    private int[] backwardQueue;
+    private int stamp;
+    private final BitSet visited;
+    private int[] depthOf;
+    private int[] stack;
+    private int[] cursor;
+
+    PathFinder(Graph graph) {
+        this.graph = graph;
+        this.visited = new BitSet();
+        allocate(graph.capacity());
+    }
+
+    private void allocate(int capacity) {
+        forwardMark = new int[capacity];
+        backwardMark = new int[capacity];
+        forwardParent = new int[capacity];
+        backwardParent = new int[capacity];
+        forwardQueue = new int[capacity];
+        backwardQueue = new int[capacity];
+        depthOf = new int[capacity];
+        stack = new int[capacity];
+        cursor = new int[capacity];
+        stamp = 0;
+    }
+
+    /**
+     * Starts a new query. Arrays grow if the graph has new handles and they are cleared when the query
+     * number overflows
+     */
+    private void begin() {
+        int capacity = graph.capacity();
+        if (capacity > forwardMark.length) {
+            allocate(Math.max(capacity, forwardMark.length + (forwardMark.length >> 1)));
+        } else if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(forwardMark, 0);
+            Arrays.fill(backwardMark, 0);
+            stamp = 0;
+        }
+        stamp++;
+    }
+
+    /**
+     * Gives a shortest directed path from source to destination
+     *
+     * @param from      Handle of source node
+     * @param to        Handle of destination node
+     * @param maxLength Maximum number of edges of path
+     * @return Handles of nodes of path from source to destination, or null if there is no path that has
+     * at most maxLength edges
+     */
+    int[] shortestPath(int from, int to, int maxLength) {
+        begin();
+        if (from == to) return new int[]{from};
+
+        forwardMark[from] = stamp;
+        backwardMark[to] = stamp;
+        forwardQueue[0] = from;
+        backwardQueue[0] = to;
+        int forwardHead = 0, forwardTail = 1, forwardDepth = 0;
+        int backwardHead = 0, backwardTail = 1, backwardDepth = 0;
+
+        while (forwardHead < forwardTail && backwardHead < backwardTail && forwardDepth + backwardDepth < maxLength) {
+            int meeting;
+            // the smaller frontier is expanded by one level
+            if (forwardTail - forwardHead <= backwardTail - backwardHead) {
+                int end = forwardTail;
+                meeting = -1;
+                while (forwardHead < end && meeting < 0) {
+                    int node = forwardQueue[forwardHead++];
+                    var out = graph.outgoing(node);
+                    for (int i = 0; i < out.size(); i++) {
+                        int next = out.node(i);
+                        if (forwardMark[next] == stamp) continue;
+                        forwardMark[next] = stamp;
+                        forwardParent[next] = node;
+                        if (backwardMark[next] == stamp) {
+                            meeting = next;
+                            break;
+                        }
+                        forwardQueue[forwardTail++] = next;
+                    }
+                }
+                forwardDepth++;
+            } else {
+                int end = backwardTail;
+                meeting = -1;
+                while (backwardHead < end && meeting < 0) {
+                    int node = backwardQueue[backwardHead++];
+                    var in = graph.incoming(node);
+                    for (int i = 0; i < in.size(); i++) {
+                        int previous = in.node(i);
+                        if (backwardMark[previous] == stamp) continue;
+                        backwardMark[previous] = stamp;
+                        backwardParent[previous] = node;
+                        if (forwardMark[previous] == stamp) {
+                            meeting = previous;
+                            break;
+                        }
+                        backwardQueue[backwardTail++] = previous;
+                    }
+                }
+                backwardDepth++;
+            }
+            // before this level the searches did not meet, so the first meeting is on a shortest path
+            if (meeting >= 0) return path(from, to, meeting, forwardDepth + backwardDepth);
+        }
+        return null;
+    }
+
+    /**
+     * Gives a directed path from source to destination by DFS. Without a depth limit each node is visited
+     * once. With a limit a node is visited again if it is reached with fewer edges, so a path that is not
+     * longer than the limit is always found if it exists
+     *
+     * @param from     Handle of source node
+     * @param to       Handle of destination node
+     * @param maxDepth Maximum number of edges of path, Integer.MAX_VALUE for no limit
+     * @return Handles of nodes of path from source to destination, or null if it not be found
+     */
+    int[] depthFirstPath(int from, int to, int maxDepth) {
+        begin();
+        if (from == to) return new int[]{from};
+
+        visited.clear();
+        visited.set(from);
+        depthOf[from] = 0;
+        stack[0] = from;
+        cursor[0] = 0;
+        // stack[depth] is the node that is reached with depth edges and cursor[depth] is its next edge
+        int depth = 0;
+        while (depth >= 0) {
+            var out = graph.outgoing(stack[depth]);
+            if (depth == maxDepth || cursor[depth] == out.size()) {
+                depth--;
+                continue;
+            }
+            int next = out.node(cursor[depth]++);
+            if (next == to) {
+                int[] path = Arrays.copyOf(stack, depth + 2);
+                path[depth + 1] = to;
+                return path;
+            }
+            if (visited.get(next) && (maxDepth == Integer.MAX_VALUE || depthOf[next] <= depth + 1)) continue;
+            visited.set(next);
+            depthOf[next] = ++depth;
+            stack[depth] = next;
+            cursor[depth] = 0;
+        }
+        return null;
+    }
+
+    /**
+     * Joins the forward half and the backward half of a path at the node where they meet
+     */
+    private int[] path(int from, int to, int meeting, int length) {
+        int[] path = new int[length + 1];
+        int i = 0;
+        for (int node = meeting; node != from; node = forwardParent[node]) i++;
+        path[i] = meeting;
+        for (int j = i, node = meeting; node != from; ) {
+            node = forwardParent[node];
+            path[--j] = node;
+        }
+        for (int node = meeting; node != to; ) {
+            node = backwardParent[node];
+            path[++i] = node;
+        }
+        return path;
+    }
+}
@@ -0,0 +1,42 @@
+package org.bihe.bean;
+
+/**
+ * A version of a graph that a reader holds. The snapshot of this version does not change, so long
+ * analytics can traverse it while writers change the graph. It must be closed when the reader is done,
+ * so the graph knows that the version is not used any more
+ */
+public class PinnedSnapshot implements AutoCloseable {
+    private final Graph graph;
+    private final int epoch;
+    private GraphSnapshot snapshot;
+
+    PinnedSnapshot(Graph graph, GraphSnapshot snapshot) {
+        this.graph = graph;
+        this.epoch = snapshot.getEpoch();
+        this.snapshot = snapshot;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Gives snapshot of this version
+     * @return Snapshot
+     * @throws IllegalStateException if it is closed
+     */
+    public GraphSnapshot getSnapshot() {
+        if (snapshot == null) throw new IllegalStateException("This snapshot is released!");
+        return snapshot;
+    }
+
+    /**
+     * Releases this version, the snapshot is not referenced from here any more
+     */
+    @Override
+    public void close() {
+        if (snapshot == null) return;
+        snapshot = null;
+        graph.unpin(epoch);
+    }
+}
@@ -0,0 +1,32 @@
+package org.bihe.bean;
+
+/**
+ * Stores a suggested user or post and its score
+ */
+public class Recommendation {
+    private final Node node;
+    private final double score;
+
+    /**
+     * Recommendation Constructor
+     * @param node Suggested node
+     * @param score Score of node, bigger is better
+     */
+    public Recommendation(Node node, double score) {
+        this.node = node;
+        this.score = score;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return node.getLabel() + " (" + score + ")";
+    }
+}
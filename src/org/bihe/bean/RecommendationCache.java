@@ -0,0 +1,140 @@
+package org.bihe.bean;
+
+import java.util.*;
+
+/**
+ * Keeps suggested items of the users that asked for them last. When the cache is full, the item that is
+ * not read for the longest time is evicted. Graph evicts the items of the users that an added or removed
+ * edge can change, so an item that is read from the cache is always the same as a new calculated one.
+ * <p>
+ * Methods are synchronized, so the cache can be used by ConcurrentGraph. An item that is calculated while
+ * an edge changes may be stale, so it is only stored if no edge is changed since its calculation began
+ */
+public class RecommendationCache {
+    private final int capacity;
+    private final LinkedHashMap<Pair<String, NodeType>, String> items;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private long version;
+
+    /**
+     * RecommendationCache Constructor
+     * @param capacity Maximum number of items, zero disables the cache
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public RecommendationCache(int capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("Capacity cannot be negative!");
+        this.capacity = capacity;
+        this.items = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Pair<String, NodeType>, String> eldest) {
+                if (size() <= RecommendationCache.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Gives cached suggested item of a user
+     * @param userID Id of user
+     * @param type Type of suggested item
+     * @return Suggested item or null if it is not cached
+     */
+    public synchronized String get(String userID, NodeType type) {
+        String item = items.get(new Pair<>(userID, type));
+        if (item == null) misses++;
+        else hits++;
+        return item;
+    }
+
+    /**
+     * Gives a ticket that must be given to put when the item that is calculated now is stored
+     * @return Number of changes until now
+     */
+    public synchronized long ticket() {
+        return version;
+    }
+
+    /**
+     * Tells the cache that an edge is changed, so the items that are being calculated are not stored.
+     * It must be called after the edge is changed and before the items of its users are invalidated
+     */
+    public synchronized void changed() {
+        version++;
+    }
+
+    /**
+     * Stores suggested item of a user if no edge is changed after the ticket is taken
+     * @param userID Id of user
+     * @param type Type of suggested item
+     * @param item Suggested item
+     * @param ticket Ticket that is taken before the item is calculated
+     */
+    public synchronized void put(String userID, NodeType type, String item, long ticket) {
+        if (capacity == 0 || ticket != version) return;
+        items.put(new Pair<>(userID, type), item);
+    }
+
+    /**
+     * Removes all suggested items of a user
+     * @param userID Id of user
+     */
+    public synchronized void invalidate(String userID) {
+        for (var type : NodeType.values()) {
+            if (items.remove(new Pair<>(userID, type)) != null) invalidations++;
+        }
+    }
+
+    /**
+     * Removes all items
+     */
+    public synchronized void clear() {
+        version++;
+        items.clear();
+    }
+
+    public synchronized boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public synchronized int size() {
+        return items.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gives number of items that are removed because the cache was full
+     * @return Number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gives number of items that are removed because of changed edges
+     * @return Number of invalidations
+     */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits: " + hits + ", misses: " + misses + ", evictions: " + evictions + ", invalidations: "
+                + invalidations + ", size: " + items.size() + "/" + capacity;
+    }
+}
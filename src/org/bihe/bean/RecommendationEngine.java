@@ -0,0 +1,222 @@
+package org.bihe.bean;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Suggests users and posts to users of a snapshot. All relation types are scored in one pass over the
+ * friends and followings of the user: each time a candidate is reached through a relation, weight of that
+ * relation is added to its score. Friends are found from mutual follow edges of the snapshot, so they are
+ * not listed again for each relation. The user and the items that the user already follows, likes or
+ * comments on are not suggested. Suggestions of all users can be calculated in parallel on a ForkJoinPool
+ */
+public class RecommendationEngine {
+    private static final int USERS_PER_TASK = 256;
+    private static final byte FOLLOW = (byte) EdgeType.follow.ordinal();
+
+    private final GraphSnapshot snapshot;
+    private final double[] weights;
+
+    /**
+     * RecommendationEngine Constructor with default weights
+     * @param snapshot Snapshot of graph
+     */
+    public RecommendationEngine(GraphSnapshot snapshot) {
+        this(snapshot, defaultWeights());
+    }
+
+    /**
+     * RecommendationEngine Constructor
+     * @param snapshot Snapshot of graph
+     * @param weights Weight of each relation type, missing types have weight zero
+     * @throws IllegalArgumentException if a weight is negative
+     */
+    public RecommendationEngine(GraphSnapshot snapshot, Map<RelationType, Double> weights) {
+        this.snapshot = snapshot;
+        this.weights = new double[RelationType.values().length];
+        for (var entry : weights.entrySet()) {
+            if (!(entry.getValue() >= 0)) throw new IllegalArgumentException("Weights cannot be negative!");
+            this.weights[entry.getKey().ordinal()] = entry.getValue();
+        }
+    }
+
+    /**
+     * Gives default weights. Relations through friends are worth more than relations through followings,
+     * and friends of other users are worth more than their followings
+     * @return Weight of each relation type
+     */
+    public static EnumMap<RelationType, Double> defaultWeights() {
+        EnumMap<RelationType, Double> weights = new EnumMap<>(RelationType.class);
+        weights.put(RelationType.FriendsOfFriends, 4.0);
+        weights.put(RelationType.FollowingsOfFriends, 2.0);
+        weights.put(RelationType.FriendsOfFollowings, 2.0);
+        weights.put(RelationType.FollowingsOfFollowings, 1.0);
+        weights.put(RelationType.PostsOfFriends, 2.0);
+        weights.put(RelationType.PostsOfFollowings, 1.0);
+        return weights;
+    }
+
+    /**
+     * Gives the best suggested users or posts for a user
+     * @param userID Id of user
+     * @param type Type of suggested items, user or post
+     * @param n Number of items
+     * @return At most n items in descending order of score
+     */
+    public List<Recommendation> recommend(String userID, NodeType type, int n) {
+        checkType(type);
+        int user = snapshot.indexOf(userID);
+        if (user < 0) throw new NoSuchElementException("This user not be found!");
+        if (!snapshot.getNode(user).getType().equals(NodeType.user))
+            throw new IllegalArgumentException("Your input type is not user!");
+        return new Scorer().recommend(user, type, n);
+    }
+
+    /**
+     * Gives the best suggested users or posts for all users. Users are split between tasks of given pool, and
+     * a task takes a free scorer or makes one, so at most one scorer is made for each thread of the pool
+     * @param type Type of suggested items, user or post
+     * @param n Number of items for each user
+     * @param pool Pool that runs the tasks
+     * @return Hashtable -> key: user id, value: suggested items in descending order of score
+     */
+    public Map<String, List<Recommendation>> recommendAll(NodeType type, int n, ForkJoinPool pool) {
+        checkType(type);
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<Recommendation>[] results = new List[snapshot.nodeCount()];
+        int[] users = new int[results.length];
+        int count = 0;
+        for (int i = 0; i < results.length; i++) {
+            if (snapshot.getNode(i).getType().equals(NodeType.user)) users[count++] = i;
+        }
+        if (count > 0) pool.invoke(new Batch(type, n, users, 0, count, results, new ConcurrentLinkedQueue<>()));
+        Map<String, List<Recommendation>> recommendations = new LinkedHashMap<>();
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != null) recommendations.put(snapshot.getNode(i).getId(), results[i]);
+        }
+        return recommendations;
+    }
+
+    private static void checkType(NodeType type) {
+        if (!type.equals(NodeType.user) && !type.equals(NodeType.post))
+            throw new IllegalArgumentException("Type of suggested items must be user or post!");
+    }
+
+    /**
+     * Task that calculates suggestions of users between two positions of the dense ids of users. Scorers are
+     * taken from the free scorers and given back when the task is done
+     */
+    @SuppressWarnings("serial")
+    private class Batch extends RecursiveAction {
+        private final NodeType type;
+        private final int n;
+        private final int[] users;
+        private final int from;
+        private final int to;
+        private final List<Recommendation>[] results;
+        private final ConcurrentLinkedQueue<Scorer> scorers;
+
+        private Batch(NodeType type, int n, int[] users, int from, int to, List<Recommendation>[] results,
+                      ConcurrentLinkedQueue<Scorer> scorers) {
+            this.type = type;
+            this.n = n;
+            this.users = users;
+            this.from = from;
+            this.to = to;
+            this.results = results;
+            this.scorers = scorers;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > USERS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(type, n, users, from, middle, results, scorers),
+                        new Batch(type, n, users, middle, to, results, scorers));
+                return;
+            }
+            var scorer = scorers.poll();
+            if (scorer == null) scorer = new Scorer();
+            for (int i = from; i < to; i++) results[users[i]] = scorer.recommend(users[i], type, n);
+            scorers.add(scorer);
+        }
+    }
+
+    /**
+     * Scores candidates of one user at a time. Arrays are reused for next users, so a scorer is used by
+     * one thread
+     */
+    private class Scorer {
+        private final int[] offsets = snapshot.offsets();
+        private final int[] targets = snapshot.targets();
+        private final byte[] edgeTypes = snapshot.edgeTypes();
+        private final BitSet mutual = snapshot.mutualFollows();
+        private final double[] scores = new double[snapshot.nodeCount()];
+        private final int[] known = new int[snapshot.nodeCount()];
+        private final int[] touched = new int[snapshot.nodeCount()];
+        private int touchedCount;
+        private int stamp;
+
+        private List<Recommendation> recommend(int user, NodeType type, int n) {
+            stamp++;
+            known[user] = stamp;
+            for (int e = offsets[user]; e < offsets[user + 1]; e++) known[targets[e]] = stamp;
+
+            boolean users = type.equals(NodeType.user);
+            for (int e = offsets[user]; e < offsets[user + 1]; e++) {
+                if (edgeTypes[e] != FOLLOW) continue;
+                int following = targets[e];
+                boolean friend = mutual.get(e);
+                for (int e2 = offsets[following]; e2 < offsets[following + 1]; e2++) {
+                    int candidate = targets[e2];
+                    if (users) {
+                        if (edgeTypes[e2] != FOLLOW) continue;
+                        boolean friendOfFollowing = mutual.get(e2);
+                        if (friend) {
+                            add(candidate, RelationType.FollowingsOfFriends);
+                            if (friendOfFollowing) add(candidate, RelationType.FriendsOfFriends);
+                        }
+                        add(candidate, RelationType.FollowingsOfFollowings);
+                        if (friendOfFollowing) add(candidate, RelationType.FriendsOfFollowings);
+                    } else if (snapshot.getNode(candidate).getType().equals(NodeType.post)) {
+                        if (friend) add(candidate, RelationType.PostsOfFriends);
+                        add(candidate, RelationType.PostsOfFollowings);
+                    }
+                }
+            }
+            return top(n);
+        }
+
+        private void add(int candidate, RelationType relation) {
+            double weight = weights[relation.ordinal()];
+            if (weight == 0) return;
+            if (scores[candidate] == 0) touched[touchedCount++] = candidate;
+            scores[candidate] += weight;
+        }
+
+        /**
+         * Selects the n candidates with the biggest scores that are not known by the user and clears the
+         * scores. Equal scores are ordered by dense id
+         */
+        private List<Recommendation> top(int n) {
+            PriorityQueue<Integer> best = new PriorityQueue<>((a, b) ->
+                    (scores[a] != scores[b]) ? Double.compare(scores[a], scores[b]) : Integer.compare(b, a));
+            for (int i = 0; i < touchedCount; i++) {
+                int candidate = touched[i];
+                if (known[candidate] == stamp || scores[candidate] <= 0) continue;
+                best.add(candidate);
+                if (best.size() > n) best.poll();
+            }
+            Recommendation[] top = new Recommendation[best.size()];
+            for (int i = top.length - 1; i >= 0; i--) {
+                int candidate = best.poll();
+                top[i] = new Recommendation(snapshot.getNode(candidate), scores[candidate]);
+            }
+            for (int i = 0; i < touchedCount; i++) scores[touched[i]] = 0;
+            touchedCount = 0;
+            return Arrays.asList(top);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package org.bihe.benchmark;
+
+import org.bihe.bean.*;
+import org.bihe.exception.ExistElementException;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stress harness of ConcurrentGraph. Writer threads add and remove edges and features while reader
+ * threads run queries. Each writer only changes edges from its own users and features of its own posts,
+ * so the final graph does not depend on the order of threads: the same operations are run again on a
+ * plain Graph in one thread and both graphs must be equal. Readers fail on any unexpected exception.
+ * <p>
+ * Arguments (all are optional):
+ * <pre>
+ * --writers=4 --readers=4   number of threads
+ * --ops=200000              operations of each writer
+ * --users=5000 --posts=2000 --features=100
+ * --seed=42
+ * </pre>
+ * Exit code is 1 if the check fails
+ */
+public class ConcurrentGraphStress {
+    private final int writers;
+    private final int readers;
+    private final int ops;
+    private final int users;
+    private final int posts;
+    private final int features;
+    private final long seed;
+
+    public ConcurrentGraphStress(int writers, int readers, int ops, int users, int posts, int features, long seed) {
+        if (writers < 1 || readers < 0 || ops < 0) throw new IllegalArgumentException("Numbers of threads and operations are not valid!");
+        if (users < writers || posts < writers || features < 2)
+            throw new IllegalArgumentException("Each writer needs at least one user and one post and there must be two features!");
+        this.writers = writers;
+        this.readers = readers;
+        this.ops = ops;
+        this.users = users;
+        this.posts = posts;
+        this.features = features;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int writers = Math.max(2, cores), readers = Math.max(2, cores), ops = 200_000;
+        int users = 5_000, posts = 2_000, features = 100;
+        long seed = 42;
+        for (var arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) throw new IllegalArgumentException("Unknown argument: " + arg);
+            switch (option[0]) {
+                case "--writers" -> writers = Integer.parseInt(option[1]);
+                case "--readers" -> readers = Integer.parseInt(option[1]);
+                case "--ops" -> ops = Integer.parseInt(option[1]);
+                case "--users" -> users = Integer.parseInt(option[1]);
+                case "--posts" -> posts = Integer.parseInt(option[1]);
+                case "--features" -> features = Integer.parseInt(option[1]);
+                case "--seed" -> seed = Long.parseLong(option[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        boolean passed = new ConcurrentGraphStress(writers, readers, ops, users, posts, features, seed).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Runs writers and readers on a ConcurrentGraph, then runs the writers again on a Graph and compares them
+     * @return true if no reader failed and both graphs are equal
+     */
+    public boolean run() throws InterruptedException {
+        new SocialGraphGenerator(users, posts, 1, 0, features, 0, 2.5, seed).registerFeatures();
+        var graph = new ConcurrentGraph();
+        addNodes(graph);
+        System.out.printf("%d writers x %,d operations, %d readers, %,d users, %,d posts%n", writers, ops, readers, users, posts);
+
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong reads = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(writers + readers);
+        List<Future<?>> writerFutures = new ArrayList<>();
+        List<Future<?>> readerFutures = new ArrayList<>();
+        long begin = System.nanoTime();
+        for (int t = 0; t < writers; t++) {
+            int thread = t;
+            writerFutures.add(pool.submit(() -> write(graph, thread)));
+        }
+        for (int t = 0; t < readers; t++) {
+            int thread = t;
+            readerFutures.add(pool.submit(() -> read(graph, thread, writing, reads, failures)));
+        }
+        for (var future : writerFutures) await(future, failures);
+        long writeNanos = System.nanoTime() - begin;
+        writing.set(false);
+        for (var future : readerFutures) await(future, failures);
+        pool.shutdown();
+
+        begin = System.nanoTime();
+        var expected = new Graph();
+        addNodes(expected);
+        for (int t = 0; t < writers; t++) write(expected, t);
+        long sequentialNanos = System.nanoTime() - begin;
+
+        System.out.printf("Concurrent: %,.0f writes/s and %,.0f reads/s, one thread on Graph: %,.0f writes/s%n",
+                writers * (double) ops * 1e9 / writeNanos, reads.get() * 1e9 / writeNanos,
+                writers * (double) ops * 1e9 / sequentialNanos);
+        compare(graph, expected, failures);
+        for (var failure : failures.subList(0, Math.min(20, failures.size()))) System.out.println("FAILED: " + failure);
+        System.out.println(failures.isEmpty() ? "OK" : failures.size() + " failures");
+        return failures.isEmpty();
+    }
+
+    private void addNodes(Graph graph) {
+        int n = users + posts;
+        String[] ids = new String[n];
+        String[] labels = new String[n];
+        NodeType[] types = new NodeType[n];
+        for (int i = 0; i < n; i++) {
+            boolean user = i < users;
+            ids[i] = user ? "u" + i : "p" + (i - users);
+            labels[i] = user ? "User_" + i : "Post_" + (i - users);
+            types[i] = user ? NodeType.user : NodeType.post;
+        }
+        graph.addNodes(ids, labels, types, n);
+    }
+
+    /**
+     * Operations of one writer. It adds edges from users and features of posts that their index modulo
+     * number of writers is the writer, and removes some of the edges and features that it added
+     * @param graph Graph
+     * @param thread Index of writer
+     */
+    private void write(Graph graph, int thread) {
+        var random = new SplittableRandom(seed + thread);
+        List<String[]> edges = new ArrayList<>();
+        List<String> postFeatures = new ArrayList<>();
+        for (int op = 0; op < ops; op++) {
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                String from = "u" + own(random, users, thread);
+                boolean follow = random.nextBoolean();
+                String to = follow ? "u" + skewed(random, users) : "p" + skewed(random, posts);
+                String type = follow ? "follow" : (random.nextBoolean() ? "like" : "comment");
+                if (from.equals(to)) continue;
+                graph.addEdge(from, to, type);
+                edges.add(new String[]{from, to, type});
+            } else if (kind < 8) {
+                if (edges.isEmpty()) continue;
+                String[] edge = edges.remove(random.nextInt(edges.size()));
+                graph.removeEdge(edge[0], edge[1], edge[2]);
+            } else if (kind < 9) {
+                String post = "p" + own(random, posts, thread);
+                int feature = 1 + skewed(random, features);
+                try {
+                    graph.addFeature(post, feature);
+                    postFeatures.add(post + "," + feature);
+                } catch (ExistElementException ignored) {
+                }
+            } else {
+                if (postFeatures.isEmpty()) continue;
+                String[] postFeature = postFeatures.remove(random.nextInt(postFeatures.size())).split(",");
+                graph.removeFeature(postFeature[0], Integer.parseInt(postFeature[1]));
+            }
+        }
+    }
+
+    /**
+     * Queries of one reader until writers finish. Results are checked for things that must be true in
+     * any state of graph
+     */
+    private void read(Graph graph, int thread, AtomicBoolean writing, AtomicLong reads, List<String> failures) {
+        var random = new SplittableRandom(seed * 31 + thread);
+        long count = 0;
+        while (writing.get() && failures.isEmpty()) {
+            String user = "u" + skewed(random, users);
+            try {
+                switch (random.nextInt(100)) {
+                    case 0 -> graph.connectedGraphs();
+                    case 1 -> graph.densityOfUsersPercent();
+                    case 2 -> graph.calculateFollowersOrLikes(NodeType.user, EdgeType.follow);
+                    case 3 -> {
+                        try (var version = graph.pin()) {
+                            var snapshot = version.getSnapshot();
+                            int edges = snapshot.edgeCount();
+                            snapshot.connectedGraphs();
+                            snapshot.densityOfUsersPercent();
+                            if (snapshot.edgeCount() != edges || version.getEpoch() > graph.epoch())
+                                failures.add("Pinned version " + version.getEpoch() + " changed");
+                        }
+                    }
+                    default -> {
+                        switch (random.nextInt(6)) {
+                            case 0 -> {
+                                var friends = graph.listOfFriends(user);
+                                if (new HashSet<>(friends).size() != friends.size())
+                                    failures.add("listOfFriends(" + user + ") has duplicates: " + friends);
+                            }
+                            case 1 -> graph.listOfFollowers(user);
+                            case 2 -> graph.listOfFollowings(user);
+                            case 3 -> {
+                                try {
+                                    graph.suggestedItem(user, random.nextBoolean() ? NodeType.user : NodeType.post);
+                                } catch (NullPointerException ignored) {
+                                    // there is no item to suggest
+                                }
+                            }
+                            case 4 -> {
+                                for (var label : graph.topFollowersOrLikes(NodeType.user, EdgeType.follow, 3)) {
+                                    if (!label.isEmpty() && !label.startsWith("User_"))
+                                        failures.add("topFollowersOrLikes gave " + label);
+                                }
+                            }
+                            default -> graph.listOfNodesWithFeature(1 + skewed(random, features));
+                        }
+                    }
+                }
+                count++;
+            } catch (RuntimeException e) {
+                failures.add("Reader " + thread + ": " + e);
+            }
+        }
+        reads.addAndGet(count);
+    }
+
+    private void compare(Graph actual, Graph expected, List<String> failures) {
+        if (!edges(actual).equals(edges(expected))) failures.add("Edges are different");
+        if (!features(actual).equals(features(expected))) failures.add("Features are different");
+        for (var nodeType : new NodeType[]{NodeType.user, NodeType.post}) {
+            for (var edgeType : EdgeType.values()) {
+                var counts = actual.calculateFollowersOrLikes(nodeType, edgeType);
+                if (!counts.equals(expected.calculateFollowersOrLikes(nodeType, edgeType)))
+                    failures.add("Counts of " + nodeType + " " + edgeType + " are different");
+                if (!topCounts(actual.topFollowersOrLikes(nodeType, edgeType, 5), counts)
+                        .equals(topCounts(expected.topFollowersOrLikes(nodeType, edgeType, 5), counts)))
+                    failures.add("Leaderboard of " + nodeType + " " + edgeType + " is different");
+            }
+        }
+        for (var type : FeatureType.values()) {
+            var counts = actual.calculateHashtagsOrMentions(type);
+            if (!counts.equals(expected.calculateHashtagsOrMentions(type)))
+                failures.add("Counts of " + type + " are different");
+            if (!topCounts(actual.topHashtagsOrMentions(type, 5), counts)
+                    .equals(topCounts(expected.topHashtagsOrMentions(type, 5), counts)))
+                failures.add("Leaderboard of " + type + " is different");
+        }
+        if (!actual.connectedGraphs().equals(expected.connectedGraphs())) failures.add("Connected graphs are different");
+        if (!actual.pinnedEpochs().isEmpty()) failures.add("Versions are still pinned: " + actual.pinnedEpochs());
+        for (int i = 0; i < users; i += Math.max(1, users / 100)) {
+            String user = "u" + i;
+            if (!actual.listOfFriends(user).equals(expected.listOfFriends(user)))
+                failures.add("Friends of " + user + " are different");
+        }
+    }
+
+    private static Set<String> edges(Graph graph) {
+        Set<String> edges = new HashSet<>();
+        for (var entry : graph.getAdjacencyList().entrySet()) {
+            for (var edge : entry.getValue())
+                edges.add(entry.getKey().getId() + "," + edge.getDestination().getId() + "," + edge.getType());
+        }
+        return edges;
+    }
+
+    private static Set<String> features(Graph graph) {
+        Set<String> features = new HashSet<>();
+        for (var entry : graph.getFeatures().entrySet()) {
+            for (var feature : entry.getValue()) features.add(entry.getKey().getId() + "," + feature.getId());
+        }
+        return features;
+    }
+
+    /**
+     * Gives counts of labels of a leaderboard, items with equal counts can be in different order
+     */
+    private static List<Integer> topCounts(String[] labels, Map<String, Integer> counts) {
+        List<Integer> top = new ArrayList<>();
+        for (var label : labels) top.add(label.isEmpty() ? 0 : counts.get(label));
+        return top;
+    }
+
+    private static void await(Future<?> future, List<String> failures) throws InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            failures.add("Thread failed: " + e.getCause());
+            e.getCause().printStackTrace();
+        }
+    }
+
+    private int own(SplittableRandom random, int n, int thread) {
+        int count = (n - thread + writers - 1) / writers;
+        return random.nextInt(Math.max(1, count)) * writers + thread;
+    }
+
+    private static int skewed(SplittableRandom random, int n) {
+        return (int) (n * Math.pow(random.nextDouble(), 3));
+    }
+}
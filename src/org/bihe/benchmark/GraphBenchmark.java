@@ -0,0 +1,360 @@
+package org.bihe.benchmark;
+
+import org.bihe.bean.*;
+import org.bihe.controll.BinarySnapshot;
+import org.bihe.controll.BulkLoader;
+import org.bihe.controll.FileManagement;
+import org.bihe.controll.LoadReport;
+import org.bihe.controll.MainController;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Benchmarks of public queries of Graph and of loading and saving files on synthetic graphs of
+ * different sizes. Each case is run for a warmup time and then for a measurement time, and the mean
+ * and the minimum time of one operation are printed. Cases that are too slow for a size are skipped
+ * and cases that throw an error are reported as failed.
+ * <p>
+ * Arguments (all are optional):
+ * <pre>
+ * --sizes=10000,1000000,10000000   numbers of edges of generated graphs
+ * --filter=path                    runs only cases that their name contains this text
+ * --warmup=1 --measure=2           warmup and measurement time of each case in seconds
+ * --threads=8                      threads of bulk loader
+ * --seed=42                        seed of generator
+ * </pre>
+ * Large sizes need a large heap, for example -Xmx8g for 10M edges. The main cases also have JMH benchmarks
+ * in GraphJmhBenchmark, that are built by the jmh profile of Maven; this class runs without JMH or Maven
+ */
+public class GraphBenchmark {
+    private static final long[] DEFAULT_SIZES = {10_000, 1_000_000, 10_000_000};
+    private static final int SAMPLES = 256;
+    private static final int BATCH_EDGES = 4096;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * Results are written here, so JIT cannot remove the measured calls
+     */
+    private static volatile Object sink;
+
+    private final String filter;
+    private final long warmupNanos;
+    private final long measureNanos;
+    private final int threads;
+    private final long seed;
+
+    /**
+     * GraphBenchmark Constructor
+     * @param filter Text that names of cases must contain, empty for all cases
+     * @param warmupNanos Warmup time of each case
+     * @param measureNanos Measurement time of each case
+     * @param threads Threads of bulk loader
+     * @param seed Seed of generator
+     */
+    public GraphBenchmark(String filter, long warmupNanos, long measureNanos, int threads, long seed) {
+        this.filter = filter;
+        this.warmupNanos = warmupNanos;
+        this.measureNanos = measureNanos;
+        this.threads = threads;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        long[] sizes = DEFAULT_SIZES;
+        String filter = "";
+        double warmup = 1, measure = 2;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = 42;
+        for (var arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) throw new IllegalArgumentException("Unknown argument: " + arg);
+            switch (option[0]) {
+                case "--sizes" -> sizes = Arrays.stream(option[1].split(",")).mapToLong(Long::parseLong).toArray();
+                case "--filter" -> filter = option[1];
+                case "--warmup" -> warmup = Double.parseDouble(option[1]);
+                case "--measure" -> measure = Double.parseDouble(option[1]);
+                case "--threads" -> threads = Integer.parseInt(option[1]);
+                case "--seed" -> seed = Long.parseLong(option[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+        var benchmark = new GraphBenchmark(filter, (long) (warmup * NANOS_PER_SECOND),
+                (long) (measure * NANOS_PER_SECOND), threads, seed);
+        for (long edges : sizes) benchmark.run(SocialGraphGenerator.ofEdges(edges, seed));
+    }
+
+    /**
+     * Generates a graph with given generator and runs all cases on it
+     * @param generator Generator of graph
+     * @throws IOException if temporary files cannot be created
+     */
+    public void run(SocialGraphGenerator generator) throws IOException {
+        System.out.printf("%n=== %,d edges: %,d users, %,d posts, %,d messages, %,d features, seed %d ===%n",
+                generator.getEdges(), generator.getUsers(), generator.getPosts(), generator.getMessages(),
+                generator.getFeatures(), generator.getSeed());
+        long begin = System.nanoTime();
+        Graph graph = generator.generate();
+        System.out.printf("Generated in %.1f ms, %,d MB used%n", (System.nanoTime() - begin) / 1e6, usedMegabytes());
+        System.out.printf("%-50s %10s %16s %16s%n", "Case", "Ops", "Mean us/op", "Min us/op");
+
+        for (var c : queryCases(graph, generator)) measure(c, generator.getEdges());
+
+        File directory = Files.createTempDirectory("graph-benchmark").toFile();
+        try {
+            for (var c : fileCases(graph, generator, directory.getPath())) measure(c, generator.getEdges());
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) for (var file : files) file.delete();
+            directory.delete();
+            generator.registerFeatures();
+        }
+    }
+
+    private List<Case> queryCases(Graph graph, SocialGraphGenerator generator) {
+        var random = new Random(seed);
+        String[] users = new String[SAMPLES];
+        String[] posts = new String[SAMPLES];
+        int[] features = new int[SAMPLES];
+        for (int i = 0; i < SAMPLES; i++) {
+            // half of the samples are popular nodes, because generator gives most edges to small ids
+            users[i] = "u" + ((i % 2 == 0) ? i / 2 % Math.min(100, generator.getUsers()) : random.nextInt(generator.getUsers()));
+            posts[i] = "p" + ((i % 2 == 0) ? i / 2 % Math.min(100, generator.getPosts()) : random.nextInt(generator.getPosts()));
+            features[i] = 1 + random.nextInt(generator.getFeatures());
+        }
+        var followers = graph.calculateFollowersOrLikes(NodeType.user, EdgeType.follow);
+        String[] toggled = anyFollow(graph, users);
+        String[][] follows = newFollows(graph, generator, random, BATCH_EDGES);
+        var addBatch = new MutationBatch(BATCH_EDGES);
+        var removeBatch = new MutationBatch(BATCH_EDGES);
+        for (var follow : follows) {
+            addBatch.addEdge(follow[0], follow[1], EdgeType.follow);
+            removeBatch.removeEdge(follow[0], follow[1], EdgeType.follow);
+        }
+
+        List<Case> cases = new ArrayList<>();
+        cases.add(new Case("calculateFollowersOrLikes(user, follow)", i -> graph.calculateFollowersOrLikes(NodeType.user, EdgeType.follow)));
+        cases.add(new Case("calculateFollowersOrLikes(post, like)", i -> graph.calculateFollowersOrLikes(NodeType.post, EdgeType.like)));
+        cases.add(new Case("calculateHashtagsOrMentions(HASHTAG)", i -> graph.calculateHashtagsOrMentions(FeatureType.HASHTAG)));
+        cases.add(new Case("threeTop(followers)", i -> graph.threeTop(followers)));
+        cases.add(new Case("topFollowersOrLikes(user, follow, 3)", i -> graph.topFollowersOrLikes(NodeType.user, EdgeType.follow, 3)));
+        cases.add(new Case("topHashtagsOrMentions(MENTION, 3)", i -> graph.topHashtagsOrMentions(FeatureType.MENTION, 3)));
+        cases.add(new Case("listOfNodesWithFeature", i -> graph.listOfNodesWithFeature(features[i % SAMPLES])));
+        cases.add(new Case("numberOfNodesWithFeature", i -> graph.numberOfNodesWithFeature(features[i % SAMPLES])));
+        cases.add(new Case("coOccurringFeatures(HASHTAG)", i -> graph.coOccurringFeatures(features[i % SAMPLES], FeatureType.HASHTAG)));
+        cases.add(new Case("listOfFriends", i -> graph.listOfFriends(users[i % SAMPLES])));
+        cases.add(new Case("listOfFollowers", i -> graph.listOfFollowers(users[i % SAMPLES])));
+        cases.add(new Case("listOfFollowings", i -> graph.listOfFollowings(users[i % SAMPLES])));
+        cases.add(new Case("listOfLikers", i -> graph.listOfLikers(posts[i % SAMPLES])));
+        cases.add(new Case("listOfPosts", i -> graph.listOfPosts(users[i % SAMPLES])));
+        cases.add(new Case("suggestedItem(user)", i -> graph.suggestedItem(users[i % SAMPLES], NodeType.user)));
+        cases.add(new Case("suggestedItem(post)", i -> graph.suggestedItem(users[i % SAMPLES], NodeType.post)));
+        cases.add(new Case("suggestedItem(user) uncached", i -> {
+            graph.getSuggestionCache().clear();
+            return graph.suggestedItem(users[i % SAMPLES], NodeType.user);
+        }));
+        cases.add(new Case("recommend(user, 10)", i -> graph.recommend(users[i % SAMPLES], NodeType.user, 10)));
+        cases.add(new Case("recommend(post, 10)", i -> graph.recommend(users[i % SAMPLES], NodeType.post, 10)));
+        cases.add(new Case("recommendAll(user, 10)", i -> graph.recommendAll(NodeType.user, 10)));
+        cases.add(new Case("numberOfAllPosts", i -> graph.numberOfAllPosts()));
+        cases.add(new Case("numbersOfRelationsBetweenEachUserWithOtherUsers", i -> graph.numbersOfRelationsBetweenEachUserWithOtherUsers()));
+        cases.add(new Case("numbersOfRelationsBetweenEachUserWithPosts", i -> graph.numbersOfRelationsBetweenEachUserWithPosts()));
+        cases.add(new Case("densityOfUsersPercent", i -> graph.densityOfUsersPercent()));
+        cases.add(new Case("densityJustBetweenUsersAndPostsPercent", i -> graph.densityJustBetweenUsersAndPostsPercent()));
+        cases.add(new Case("densityTotalBetweenUsersAndPostsPercent", i -> graph.densityTotalBetweenUsersAndPostsPercent()));
+        cases.add(new Case("findPath(DFS)", i -> graph.findPath(users[i % SAMPLES], users[(i + 1) % SAMPLES], (byte) 1)));
+        cases.add(new Case("findPathDFS(depth 6)", i -> graph.findPathDFS(users[i % SAMPLES], users[(i + 1) % SAMPLES], 6)));
+        cases.add(new Case("findPath(BFS)", i -> graph.findPath(users[i % SAMPLES], users[(i + 1) % SAMPLES], (byte) 2)));
+        cases.add(new Case("getShortestPath", i -> graph.getShortestPath(users[i % SAMPLES], users[(i + 1) % SAMPLES])));
+        cases.add(new Case("DFS", i -> graph.DFS(users[i % SAMPLES])));
+        cases.add(new Case("neighbourhood(50 users, 3 hops, follow, BOTH)", i -> graph.neighbourhood(Arrays.asList(users).subList(0, 50), 3, EnumSet.of(EdgeType.follow), Direction.BOTH, (node, distance) -> sink = node)));
+        cases.add(new Case("connectedGraphs", i -> graph.connectedGraphs()));
+        cases.add(new Case("mostNumberOfUsersConnectedGraph", i -> graph.mostNumberOfUsersConnectedGraph()));
+        cases.add(new Case("getShortestPathsForPairNodesOfGraph", 2_000, i -> graph.getShortestPathsForPairNodesOfGraph()));
+        cases.add(new Case("getShortestPathsForPairNodesOfConnectedGraph", 2_000, i -> graph.getShortestPathsForPairNodesOfConnectedGraph()));
+        cases.add(new Case("addEdge + removeEdge x" + BATCH_EDGES + " (one by one)", i -> {
+            for (var follow : follows) graph.addEdge(follow[0], follow[1], EdgeType.follow.name());
+            for (var follow : follows) graph.removeEdge(follow[0], follow[1], EdgeType.follow.name());
+            return null;
+        }));
+        cases.add(new Case("applyBatch(add + remove x" + BATCH_EDGES + ")", i -> {
+            graph.applyBatch(addBatch);
+            return graph.applyBatch(removeBatch);
+        }));
+        cases.add(new Case("snapshot (after a change)", i -> {
+            toggle(graph, toggled);
+            return graph.snapshot();
+        }));
+        cases.add(new Case("betweennessCentrality (after a change)", 100_000, i -> {
+            toggle(graph, toggled);
+            return graph.betweennessCentrality(users[i % SAMPLES]);
+        }));
+        cases.add(new Case("betweennessCentrality (cached)", 100_000, i -> graph.betweennessCentrality(users[i % SAMPLES])));
+        return cases;
+    }
+
+    private List<Case> fileCases(Graph graph, SocialGraphGenerator generator, String directory) {
+        String nodes = directory + "/nodes.csv";
+        String edges = directory + "/edges.csv";
+        String features = directory + "/features.csv";
+        String featureMap = directory + "/feature_map.csv";
+        String snapshot = directory + "/graph.snapshot";
+        List<Case> cases = new ArrayList<>();
+        cases.add(new Case("save CSV", i -> {
+            FileManagement.writeToNodes(graph, nodes);
+            FileManagement.writeToEdges(graph, edges);
+            FileManagement.writeToFeatures(features);
+            FileManagement.writeToFeatureMap(graph, featureMap);
+            return null;
+        }));
+        cases.add(new Case("load CSV (line reader)", i -> {
+            Graph loaded = new Graph();
+            FileManagement.initNodes(loaded, nodes);
+            FileManagement.initEdges(loaded, edges);
+            FileManagement.initFeatureMap(loaded, featureMap);
+            return loaded;
+        }));
+        cases.add(new Case("load CSV (bulk loader, " + threads + " threads)", i -> {
+            Graph loaded = new Graph();
+            var loader = new BulkLoader(threads);
+            complete(loader.loadNodes(loaded, nodes));
+            complete(loader.loadEdges(loaded, edges));
+            complete(loader.loadFeatureMap(loaded, featureMap));
+            return loaded;
+        }));
+        cases.add(new Case("save snapshot", i -> {
+            BinarySnapshot.write(graph, snapshot);
+            return null;
+        }));
+        cases.add(new Case("load snapshot", i -> {
+            MainController.features.clear();
+            Graph loaded = new Graph();
+            BinarySnapshot.read(loaded, snapshot);
+            return loaded;
+        }));
+        return cases;
+    }
+
+    /**
+     * Runs a case for warmup time and then for measurement time, at least once each, and prints the result
+     * @param c Case
+     * @param edges Number of edges of graph
+     */
+    private void measure(Case c, long edges) {
+        if (!c.name.contains(filter)) return;
+        if (edges > c.maxEdges) {
+            System.out.printf("%-50s %10s%n", c.name, "skipped (more than " + c.maxEdges + " edges)");
+            return;
+        }
+        try {
+            int i = 0;
+            long end = System.nanoTime() + warmupNanos;
+            do {
+                call(c, i++);
+            } while (System.nanoTime() < end);
+
+            long ops = 0, total = 0, min = Long.MAX_VALUE;
+            end = System.nanoTime() + measureNanos;
+            do {
+                long begin = System.nanoTime();
+                call(c, i++);
+                long elapsed = System.nanoTime() - begin;
+                total += elapsed;
+                min = Math.min(min, elapsed);
+                ops++;
+            } while (System.nanoTime() < end);
+            System.out.printf("%-50s %10d %16.3f %16.3f%n", c.name, ops, total / 1e3 / ops, min / 1e3);
+        } catch (Exception | StackOverflowError | OutOfMemoryError e) {
+            System.out.printf("%-50s %10s%n", c.name, "failed: " + e);
+        }
+    }
+
+    /**
+     * Calls operation of a case. Exceptions of queries, for example when there is no suggested item, are
+     * a normal result of the call
+     */
+    private static void call(Case c, int i) throws Exception {
+        try {
+            sink = c.operation.run(i);
+        } catch (NoSuchElementException | IllegalArgumentException | NullPointerException e) {
+            sink = e;
+        }
+    }
+
+    /**
+     * Finds a follow edge from one of given users
+     * @return Array of source id and destination id
+     */
+    private static String[] anyFollow(Graph graph, String[] users) {
+        for (var user : users) {
+            for (var edge : graph.getEdges(user)) {
+                if (edge.getType().equals(EdgeType.follow)) return new String[]{user, edge.getDestination().getId()};
+            }
+        }
+        throw new IllegalStateException("Generated graph has no follow edge!");
+    }
+
+    /**
+     * Gives follow edges that are not in the graph. Half of them are from popular users, so batches have
+     * several edges of one source
+     */
+    private static String[][] newFollows(Graph graph, SocialGraphGenerator generator, Random random, int count) {
+        String[][] follows = new String[count][];
+        var chosen = new HashSet<String>();
+        for (int i = 0; i < count; ) {
+            String from = "u" + ((i % 2 == 0) ? random.nextInt(Math.min(100, generator.getUsers())) : random.nextInt(generator.getUsers()));
+            String to = "u" + random.nextInt(generator.getUsers());
+            if (!chosen.add(from + "," + to) || graph.listOfFollowings(from).contains(to)) continue;
+            follows[i++] = new String[]{from, to};
+        }
+        return follows;
+    }
+
+    /**
+     * Removes and adds back an edge, so cached snapshot and centrality are calculated again
+     */
+    private static void toggle(Graph graph, String[] edge) {
+        graph.removeEdge(edge[0], edge[1], EdgeType.follow.name());
+        graph.addEdge(edge[0], edge[1], EdgeType.follow.name());
+    }
+
+    /**
+     * Stops the benchmark if a file could not be loaded, as its time would be the time of a partial load
+     */
+    private static void complete(LoadReport report) {
+        if (!report.isComplete()) throw new IllegalStateException(report.toString());
+    }
+
+    private static long usedMegabytes() {
+        var runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+    }
+
+    /**
+     * Operation of a case that gets number of the call and returns a result
+     */
+    private interface Operation {
+        Object run(int i) throws Exception;
+    }
+
+    /**
+     * A named operation and the largest number of edges that it is run for
+     */
+    private static class Case {
+        private final String name;
+        private final long maxEdges;
+        private final Operation operation;
+
+        private Case(String name, Operation operation) {
+            this(name, Long.MAX_VALUE, operation);
+        }
+
+        private Case(String name, long maxEdges, Operation operation) {
+            this.name = name;
+            this.maxEdges = maxEdges;
+            this.operation = operation;
+        }
+    }
+}
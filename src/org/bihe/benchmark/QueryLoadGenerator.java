@@ -0,0 +1,138 @@
+package org.bihe.benchmark;
+
+import org.bihe.bean.ConcurrentGraph;
+import org.bihe.bean.LatencyHistogram;
+import org.bihe.controll.QueryServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator of QueryServer. It generates a graph, starts a server on a free local port and runs
+ * client threads that send a mix of read queries (suggestions, friends, top items, density and paths)
+ * for a fixed time. It is run with 1, 2, 4, ... clients up to two clients per core, and prints throughput
+ * and latency of each run, so scaling with cores can be seen.
+ * <p>
+ * Arguments (all are optional):
+ * <pre>
+ * --edges=100000      size of generated graph
+ * --threads=8         threads of server, default is two per core
+ * --seconds=5         time of each run
+ * --max-clients=8     biggest number of clients
+ * --seed=42
+ * </pre>
+ * Exit code is 1 if a query gets an unexpected status
+ */
+public class QueryLoadGenerator {
+    private final QueryServer server;
+    private final SocialGraphGenerator generator;
+    private final long nanos;
+    private final long seed;
+
+    public QueryLoadGenerator(QueryServer server, SocialGraphGenerator generator, long nanos, long seed) {
+        this.server = server;
+        this.generator = generator;
+        this.nanos = nanos;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long edges = 100_000, seed = 42;
+        int threads = cores * 2, seconds = 5, maxClients = cores * 2;
+        for (var arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) throw new IllegalArgumentException("Unknown argument: " + arg);
+            switch (option[0]) {
+                case "--edges" -> edges = Long.parseLong(option[1]);
+                case "--threads" -> threads = Integer.parseInt(option[1]);
+                case "--seconds" -> seconds = Integer.parseInt(option[1]);
+                case "--max-clients" -> maxClients = Integer.parseInt(option[1]);
+                case "--seed" -> seed = Long.parseLong(option[1]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + arg);
+            }
+        }
+
+        var generator = SocialGraphGenerator.ofEdges(edges, seed);
+        var graph = (ConcurrentGraph) generator.generate(new ConcurrentGraph());
+        boolean failed = false;
+        try (var server = new QueryServer(graph, 0, threads)) {
+            server.start();
+            System.out.printf("%,d edges, %d cores, %d server threads, %d s per run%n", edges, cores, threads, seconds);
+            System.out.printf("%-8s %14s %12s %12s %12s%n", "Clients", "Requests/s", "p50 us", "p99 us", "Errors");
+            var load = new QueryLoadGenerator(server, generator, seconds * 1_000_000_000L, seed);
+            for (int clients = 1; clients <= maxClients; clients *= 2) failed |= load.run(clients);
+        }
+        if (failed) System.exit(1);
+    }
+
+    /**
+     * Runs given number of clients for the time of a run and prints the result
+     * @param clients Number of client threads
+     * @return true if a query gets an unexpected status
+     */
+    public boolean run(int clients) throws InterruptedException {
+        var latencies = new LatencyHistogram();
+        var requests = new AtomicLong();
+        var errors = new AtomicLong();
+        long end = System.nanoTime() + nanos;
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            var random = new SplittableRandom(seed + c);
+            var thread = new Thread(() -> {
+                byte[] buffer = new byte[8192];
+                while (System.nanoTime() < end) {
+                    long begin = System.nanoTime();
+                    try {
+                        if (get(query(random), buffer) != 200) errors.incrementAndGet();
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies.record(System.nanoTime() - begin);
+                    requests.incrementAndGet();
+                }
+            }, "client-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+        for (var thread : threads) thread.join();
+        System.out.printf("%-8d %,14.0f %,12.1f %,12.1f %12d%n", clients, requests.get() * 1e9 / nanos,
+                latencies.percentile(50) / 1e3, latencies.percentile(99) / 1e3, errors.get());
+        return errors.get() > 0;
+    }
+
+    /**
+     * Gives a random query. Most queries are about popular users, like a real workload
+     */
+    private String query(SplittableRandom random) {
+        String user = "u" + (random.nextBoolean() ? random.nextInt(Math.min(100, generator.getUsers())) : random.nextInt(generator.getUsers()));
+        int kind = random.nextInt(100);
+        if (kind < 30) return "/friends?user=" + user;
+        if (kind < 45) return "/suggestion?user=" + user + "&type=" + (random.nextBoolean() ? "user" : "post");
+        if (kind < 60) return "/recommend?user=" + user + "&type=post&n=5";
+        if (kind < 80) return "/top?of=" + (random.nextBoolean() ? "followers" : "hashtags") + "&k=10";
+        if (kind < 95) return "/density";
+        return "/path?from=" + user + "&to=u" + random.nextInt(generator.getUsers());
+    }
+
+    /**
+     * Sends a GET request on a kept alive connection and reads the whole answer
+     * @return Status of answer
+     */
+    private int get(String query, byte[] buffer) throws IOException {
+        var connection = (HttpURLConnection) new URL(server.getURL() + query).openConnection();
+        int status = connection.getResponseCode();
+        try (InputStream in = (status < 400) ? connection.getInputStream() : connection.getErrorStream()) {
+            while (in != null && in.read(buffer) >= 0) {
+                // the answer is read to the end, so the connection is reused
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,217 @@
+package org.bihe.benchmark;
+
+import org.bihe.bean.EdgeType;
+import org.bihe.bean.FeatureType;
+import org.bihe.bean.Graph;
+import org.bihe.bean.NodeType;
+import org.bihe.controll.FileManagement;
+import org.bihe.controll.MainController;
+import org.bihe.exception.ExistElementException;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generates synthetic social graphs for benchmarks. Users are u0, u1, ..., posts are p0, p1, ... and
+ * messages are m0, m1, .... Sources of edges are uniform users, destinations are chosen with a power-law
+ * distribution, so a few users have most of the followers and a few posts have most of the likes and
+ * comments. Features are hashtags and mentions that are also chosen with a power-law distribution.
+ * The same configuration and seed always give the same graph
+ */
+public class SocialGraphGenerator {
+    private static final int BATCH_SIZE = 1 << 16;
+    private static final double FOLLOW_RATIO = 0.6;
+    private static final double LIKE_RATIO = 0.3;
+
+    private final int users;
+    private final int posts;
+    private final int messages;
+    private final long edges;
+    private final int features;
+    private final int featuresPerPost;
+    private final double exponent;
+    private final long seed;
+
+    /**
+     * SocialGraphGenerator Constructor
+     * @param users Number of users
+     * @param posts Number of posts
+     * @param messages Number of messages
+     * @param edges Number of edges that are generated, duplicate edges are not added to graph
+     * @param features Number of features, half of them are hashtags and half are mentions
+     * @param featuresPerPost Maximum number of features of each post or message
+     * @param alpha Exponent of the power-law degree distribution of destinations, it must be more than 2
+     * @param seed Seed of random generator
+     */
+    public SocialGraphGenerator(int users, int posts, int messages, long edges, int features, int featuresPerPost,
+                                double alpha, long seed) {
+        if (users < 1 || posts < 1 || messages < 0 || edges < 0 || features < 2 || featuresPerPost < 0)
+            throw new IllegalArgumentException("Numbers of nodes, edges and features are not valid!");
+        if (alpha <= 2) throw new IllegalArgumentException("Alpha must be more than 2!");
+        this.users = users;
+        this.posts = posts;
+        this.messages = messages;
+        this.edges = edges;
+        this.features = features;
+        this.featuresPerPost = featuresPerPost;
+        this.exponent = 1 / (1 - 1 / (alpha - 1));
+        this.seed = seed;
+    }
+
+    /**
+     * Gives a generator that number of nodes and features are chosen according to given number of edges
+     * @param edges Number of edges
+     * @param seed Seed of random generator
+     * @return Generator
+     */
+    public static SocialGraphGenerator ofEdges(long edges, long seed) {
+        int users = (int) Math.max(100, edges / 20);
+        int posts = (int) Math.max(50, edges / 40);
+        int messages = (int) Math.max(10, edges / 200);
+        int features = (int) Math.min(100_000, Math.max(20, edges / 1000));
+        return new SocialGraphGenerator(users, posts, messages, edges, features, 3, 2.5, seed);
+    }
+
+    /**
+     * Replaces features of MainController with the generated hashtags and mentions. Ids of features
+     * start from 1
+     */
+    public void registerFeatures() {
+        MainController.features.clear();
+        for (int i = 1; i <= features; i++) {
+            try {
+                if (i % 2 == 1) MainController.addFeature(i, FeatureType.HASHTAG, "#tag_" + (i / 2 + 1));
+                else MainController.addFeature(i, FeatureType.MENTION, "@user_" + (i / 2));
+            } catch (ExistElementException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Registers the features and generates a new graph
+     * @return Generated graph
+     */
+    public Graph generate() {
+        return generate(new Graph());
+    }
+
+    /**
+     * Registers the features and generates nodes, edges and features into given graph
+     * @param graph Empty graph, for example a ConcurrentGraph
+     * @return Given graph
+     */
+    public Graph generate(Graph graph) {
+        registerFeatures();
+        var random = new SplittableRandom(seed);
+        addNodes(graph, users, "u", "User_", NodeType.user);
+        addNodes(graph, posts, "p", "Post_", NodeType.post);
+        addNodes(graph, messages, "m", "Message_", NodeType.message);
+
+        String[] from = new String[BATCH_SIZE];
+        String[] to = new String[BATCH_SIZE];
+        EdgeType[] types = new EdgeType[BATCH_SIZE];
+        int size = 0;
+        for (long e = 0; e < edges; e++) {
+            from[size] = "u" + random.nextInt(users);
+            double kind = random.nextDouble();
+            if (kind < FOLLOW_RATIO) {
+                to[size] = "u" + powerLaw(random, users);
+                types[size] = EdgeType.follow;
+            } else {
+                boolean post = messages == 0 || random.nextInt(4) != 0;
+                to[size] = post ? "p" + powerLaw(random, posts) : "m" + powerLaw(random, messages);
+                types[size] = (kind < FOLLOW_RATIO + LIKE_RATIO) ? EdgeType.like : EdgeType.comment;
+            }
+            if (from[size].equals(to[size])) continue;
+            if (++size == BATCH_SIZE) {
+                graph.addEdges(from, to, types, size);
+                size = 0;
+            }
+        }
+        graph.addEdges(from, to, types, size);
+
+        String[] nodeIDs = new String[BATCH_SIZE];
+        int[] featureIDs = new int[BATCH_SIZE];
+        size = 0;
+        for (int i = 0; i < posts + messages; i++) {
+            String nodeID = (i < posts) ? "p" + i : "m" + (i - posts);
+            int count = random.nextInt(featuresPerPost + 1);
+            for (int j = 0; j < count; j++) {
+                nodeIDs[size] = nodeID;
+                featureIDs[size] = powerLaw(random, features) + 1;
+                if (++size == BATCH_SIZE) {
+                    graph.addFeatures(nodeIDs, featureIDs, size);
+                    size = 0;
+                }
+            }
+        }
+        graph.addFeatures(nodeIDs, featureIDs, size);
+        return graph;
+    }
+
+    /**
+     * Generates a graph and writes it as nodes, edges, features and feature map CSV files
+     * @param directory Directory of files
+     * @return Generated graph
+     */
+    public Graph writeCsv(String directory) {
+        Graph graph = generate();
+        FileManagement.writeToNodes(graph, directory + "/nodes.csv");
+        FileManagement.writeToEdges(graph, directory + "/edges.csv");
+        FileManagement.writeToFeatures(directory + "/features.csv");
+        FileManagement.writeToFeatureMap(graph, directory + "/feature_map.csv");
+        return graph;
+    }
+
+    public int getUsers() {
+        return users;
+    }
+
+    public int getPosts() {
+        return posts;
+    }
+
+    public int getMessages() {
+        return messages;
+    }
+
+    public long getEdges() {
+        return edges;
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    private static void addNodes(Graph graph, int count, String prefix, String labelPrefix, NodeType type) {
+        String[] ids = new String[BATCH_SIZE];
+        String[] labels = new String[BATCH_SIZE];
+        NodeType[] types = new NodeType[BATCH_SIZE];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            ids[size] = prefix + i;
+            labels[size] = labelPrefix + i;
+            types[size] = type;
+            if (++size == BATCH_SIZE) {
+                graph.addNodes(ids, labels, types, size);
+                size = 0;
+            }
+        }
+        graph.addNodes(ids, labels, types, size);
+    }
+
+    /**
+     * Chooses an index in [0, n) that smaller indexes are chosen more, so number of times that each
+     * index is chosen follows a power-law distribution
+     * @param random Random generator
+     * @param n Number of indexes
+     * @return Index
+     */
+    private int powerLaw(SplittableRandom random, int n) {
+        return (int) (n * Math.pow(random.nextDouble(), exponent));
+    }
+}
@@ -0,0 +1,400 @@
+package org.bihe.controll;
+
+import org.bihe.bean.*;
+import org.bihe.exception.ExistElementException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes a graph in a compact binary file. The file has a header (magic and version), a table
+ * of all ids and labels, the features, the nodes, the adjacency lists of each edge type and the postings of
+ * each feature. Numbers are varints and sorted lists store differences, so the file is much smaller than
+ * the CSV files. It is written through a FileChannel and read from mapped regions of the file. The file ends
+ * with the CRC32 of all bytes before it, which is checked before anything is added to the graph, so a corrupt
+ * or truncated file is rejected with an IOException
+ */
+public class BinarySnapshot {
+    public static final String SNAPSHOT_PATH = "files/graph.snapshot";
+    private static final int MAGIC = 0x53534D47;
+    private static final int VERSION = 2;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int BATCH_SIZE = 1 << 16;
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+    private static final EdgeType[] EDGE_TYPES = EdgeType.values();
+    private static final FeatureType[] FEATURE_TYPES = FeatureType.values();
+
+    /**
+     * Writes graph and features of MainController to given path. The file is written next to the path
+     * and moved to it when it is complete
+     * @param graph Graph
+     * @param path Path of snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Graph graph, String path) throws IOException {
+        Collection<Node> nodes = graph.getNodes().values();
+        Collection<Feature> features = MainController.features.values();
+        HashMap<String, Integer> strings = new LinkedHashMap<>();
+        HashMap<String, Integer> dense = new HashMap<>(nodes.size() * 2);
+        for (var node : nodes) {
+            dense.put(node.getId(), dense.size());
+            strings.putIfAbsent(node.getId(), strings.size());
+            strings.putIfAbsent(node.getLabel(), strings.size());
+        }
+        for (var feature : features) strings.putIfAbsent(feature.getLabel(), strings.size());
+
+        Path file = Path.of(path);
+        Path temporary = Path.of(path + ".tmp");
+        try (var out = new Output(FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))) {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putVarint(strings.size());
+            for (var string : strings.keySet()) out.putString(string);
+
+            out.putVarint(features.size());
+            for (var feature : features) {
+                out.putVarint(zigzag(feature.getId()));
+                out.putByte(feature.getType().ordinal());
+                out.putVarint(strings.get(feature.getLabel()));
+            }
+
+            out.putVarint(nodes.size());
+            for (var node : nodes) {
+                out.putVarint(strings.get(node.getId()));
+                out.putVarint(strings.get(node.getLabel()));
+                out.putByte(node.getType().ordinal());
+            }
+
+            List<long[]> adjacency = new ArrayList<>(nodes.size());
+            for (var node : nodes) {
+                List<Edge> edges = graph.getEdges(node.getId());
+                long[] packed = new long[edges.size()];
+                for (int i = 0; i < packed.length; i++) {
+                    var edge = edges.get(i);
+                    packed[i] = (long) dense.get(edge.getDestination().getId()) * EDGE_TYPES.length + edge.getType().ordinal();
+                }
+                Arrays.sort(packed);
+                adjacency.add(packed);
+            }
+            for (var type : EDGE_TYPES) {
+                for (long[] packed : adjacency) {
+                    int degree = 0;
+                    for (long p : packed) if (p % EDGE_TYPES.length == type.ordinal()) degree++;
+                    out.putVarint(degree);
+                    int previous = 0;
+                    for (long p : packed) {
+                        if (p % EDGE_TYPES.length != type.ordinal()) continue;
+                        int target = (int) (p / EDGE_TYPES.length);
+                        out.putVarint(target - previous);
+                        previous = target;
+                    }
+                }
+            }
+
+            HashMap<Feature, List<Integer>> postings = new HashMap<>();
+            for (var entry : graph.getFeatures().entrySet()) {
+                int node = dense.get(entry.getKey().getId());
+                for (var feature : entry.getValue()) postings.computeIfAbsent(feature, f -> new ArrayList<>()).add(node);
+            }
+            for (var feature : features) {
+                List<Integer> posting = postings.getOrDefault(feature, Collections.emptyList());
+                Collections.sort(posting);
+                out.putVarint(posting.size());
+                int previous = 0;
+                for (int node : posting) {
+                    out.putVarint(node - previous);
+                    previous = node;
+                }
+            }
+            out.putChecksum();
+            out.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot file into given empty graph and adds its features to features of MainController
+     * @param graph Graph
+     * @param path Path of snapshot file
+     * @return Report of loading, rows are nodes, edges and feature postings
+     * @throws IOException if the file cannot be read, it is corrupt or it is not a snapshot of this version
+     */
+    public static LoadReport read(Graph graph, String path) throws IOException {
+        LoadReport report = new LoadReport(path);
+        long begin = System.nanoTime();
+        try (var in = new Input(FileChannel.open(Path.of(path), StandardOpenOption.READ))) {
+            if (in.getInt() != MAGIC) throw new IOException("This file is not a graph snapshot!");
+            int version = in.getInt();
+            if (version != VERSION) throw new IOException("Snapshot version " + version + " is not supported!");
+            in.verifyChecksum();
+            read(graph, in, report);
+        } catch (RuntimeException e) {
+            throw new IOException("Snapshot file is corrupted!", e);
+        }
+        report.setNanos(System.nanoTime() - begin);
+        return report;
+    }
+
+    private static void read(Graph graph, Input in, LoadReport report) throws IOException {
+        String[] strings = new String[in.getCount()];
+        for (int i = 0; i < strings.length; i++) strings[i] = in.getString();
+
+        int[] featureIDs = new int[in.getCount()];
+        for (int i = 0; i < featureIDs.length; i++) {
+            featureIDs[i] = unzigzag(in.getVarint());
+            var type = FEATURE_TYPES[in.getByte()];
+            String label = strings[in.getVarint()];
+            try {
+                MainController.addFeature(featureIDs[i], type, label);
+            } catch (ExistElementException | IllegalStateException e) {
+                report.reject(featureIDs[i] + "," + label, e.getMessage());
+            }
+        }
+        report.addRows(featureIDs.length);
+
+        int n = in.getCount();
+        String[] ids = new String[n];
+        String[] labels = new String[n];
+        NodeType[] types = new NodeType[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = strings[in.getVarint()];
+            labels[i] = strings[in.getVarint()];
+            types[i] = NODE_TYPES[in.getByte()];
+        }
+        rejectErrors(report, graph.addNodes(ids, labels, types, n), ids, labels);
+        report.addRows(n);
+
+        String[] from = new String[BATCH_SIZE];
+        String[] to = new String[BATCH_SIZE];
+        EdgeType[] edgeTypes = new EdgeType[BATCH_SIZE];
+        int size = 0;
+        for (var type : EDGE_TYPES) {
+            for (int node = 0; node < n; node++) {
+                int degree = in.getVarint();
+                int target = 0;
+                for (int i = 0; i < degree; i++) {
+                    target += in.getVarint();
+                    from[size] = ids[node];
+                    to[size] = ids[target];
+                    edgeTypes[size++] = type;
+                    if (size == BATCH_SIZE) {
+                        rejectErrors(report, graph.addEdges(from, to, edgeTypes, size), from, to);
+                        report.addRows(size);
+                        size = 0;
+                    }
+                }
+            }
+        }
+        rejectErrors(report, graph.addEdges(from, to, edgeTypes, size), from, to);
+        report.addRows(size);
+
+        String[] nodeIDs = new String[BATCH_SIZE];
+        int[] postingFeatures = new int[BATCH_SIZE];
+        size = 0;
+        for (int featureID : featureIDs) {
+            int count = in.getVarint();
+            int node = 0;
+            for (int i = 0; i < count; i++) {
+                node += in.getVarint();
+                nodeIDs[size] = ids[node];
+                postingFeatures[size++] = featureID;
+                if (size == BATCH_SIZE) {
+                    rejectErrors(report, graph.addFeatures(nodeIDs, postingFeatures, size), nodeIDs, null);
+                    report.addRows(size);
+                    size = 0;
+                }
+            }
+        }
+        rejectErrors(report, graph.addFeatures(nodeIDs, postingFeatures, size), nodeIDs, null);
+        report.addRows(size);
+        if (in.position() != in.size) throw new IOException("Snapshot file is corrupted!");
+    }
+
+    private static void rejectErrors(LoadReport report, String[] errors, String[] first, String[] second) {
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) report.reject(first[i] + ((second == null) ? "" : "," + second[i]), errors[i]);
+        }
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Buffered writer of numbers and strings to a file channel
+     */
+    private static class Output implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final CRC32 checksum = new CRC32();
+
+        private Output(FileChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        private void putVarint(int value) throws IOException {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void putChecksum() throws IOException {
+            flush();
+            putInt((int) checksum.getValue());
+        }
+
+        private void force() throws IOException {
+            flush();
+            channel.force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            channel.close();
+        }
+    }
+
+    /**
+     * Reader of numbers and strings from mapped regions of a file channel. When the current region does not
+     * have enough bytes the next region is mapped from the current position. The checksum at the end of the
+     * file is not a part of the readable bytes
+     */
+    private static class Input implements AutoCloseable {
+        private static final long REGION_SIZE = 1 << 30;
+
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer buffer;
+        private long regionStart;
+
+        private Input(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size() - 4;
+            if (size < 8) throw new IOException("Snapshot file is truncated!");
+            map(0);
+        }
+
+        /**
+         * Checks the CRC32 of all readable bytes with the checksum at the end of the file
+         * @throws IOException if they do not match
+         */
+        private void verifyChecksum() throws IOException {
+            var crc = new CRC32();
+            for (long position = 0; position < size; position += REGION_SIZE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, size - position)));
+            }
+            var trailer = channel.map(FileChannel.MapMode.READ_ONLY, size, 4);
+            if (trailer.getInt() != (int) crc.getValue()) throw new IOException("Snapshot checksum does not match!");
+        }
+
+        private void map(long position) throws IOException {
+            regionStart = position;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE, size - position));
+        }
+
+        private long position() {
+            return regionStart + buffer.position();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) return;
+            if (size - position() < bytes) throw new IOException("Snapshot file is truncated!");
+            map(position());
+        }
+
+        private int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        private int getByte() throws IOException {
+            ensure(1);
+            return buffer.get() & 0xFF;
+        }
+
+        private int getVarint() throws IOException {
+            ensure((int) Math.min(5, size - position()));
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (!buffer.hasRemaining()) throw new IOException("Snapshot file is truncated!");
+                int b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Snapshot file is corrupted!");
+        }
+
+        /**
+         * Reads the size of a list or string, that is never more than the bytes left in the file
+         * @return Size
+         * @throws IOException if the size is not possible
+         */
+        private int getCount() throws IOException {
+            int count = getVarint();
+            if (count < 0 || count > size - position()) throw new IOException("Snapshot file is corrupted!");
+            return count;
+        }
+
+        private String getString() throws IOException {
+            int length = getCount();
+            ensure(length);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package org.bihe.controll;
+
+import org.bihe.bean.EdgeType;
+import org.bihe.bean.Graph;
+import org.bihe.bean.NodeType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads nodes, edges and feature map files in bulk. Each file is memory mapped and split into chunks on
+ * line boundaries. Chunks are parsed by a pool of threads directly from the mapped bytes without split or
+ * regex, and the parsed rows are added to the graph chunk by chunk in file order with the batch methods
+ * of Graph, so one bad row is reported instead of stopping the load. A row of a feature map is one
+ * feature of a node, so numbers of rows and rejected rows of a feature map are counted in features. If
+ * the file cannot be read, the report is marked as failed
+ */
+public class BulkLoader {
+    private static final long CHUNK_SIZE = 8 << 20;
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+    private static final EdgeType[] EDGE_TYPES = EdgeType.values();
+    private static final byte[][] NODE_TYPE_NAMES = names(NODE_TYPES);
+    private static final byte[][] EDGE_TYPE_NAMES = names(EDGE_TYPES);
+
+    private final int threads;
+    private final long chunkSize;
+
+    /**
+     * BulkLoader Constructor
+     * @param threads Number of threads that parse chunks
+     */
+    public BulkLoader(int threads) {
+        this(threads, CHUNK_SIZE);
+    }
+
+    /**
+     * BulkLoader Constructor
+     * @param threads Number of threads that parse chunks
+     * @param chunkSize Size of each chunk in bytes, a chunk ends at the first line end after this size
+     */
+    public BulkLoader(int threads, long chunkSize) {
+        if (threads < 1 || chunkSize < 1) throw new IllegalArgumentException("Threads and chunk size must be positive!");
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Loads nodes file that each row is id,label,type
+     * @param graph Graph
+     * @param path Path of file
+     * @return Report of loading
+     */
+    public LoadReport loadNodes(Graph graph, String path) {
+        return load(graph, path, Kind.NODES);
+    }
+
+    /**
+     * Loads edges file that each row is source id,destination id,type
+     * @param graph Graph
+     * @param path Path of file
+     * @return Report of loading
+     */
+    public LoadReport loadEdges(Graph graph, String path) {
+        return load(graph, path, Kind.EDGES);
+    }
+
+    /**
+     * Loads feature map file. Sparse files (that start with the sparse header) have node id followed by
+     * feature ids in each row, and dense files have node id followed by a 0 or 1 column for each feature id
+     * @param graph Graph
+     * @param path Path of file
+     * @return Report of loading
+     */
+    public LoadReport loadFeatureMap(Graph graph, String path) {
+        return load(graph, path, FileManagement.isSparseFeatureMap(path) ? Kind.SPARSE_FEATURE_MAP : Kind.FEATURE_MAP);
+    }
+
+    private LoadReport load(Graph graph, String path, Kind kind) {
+        LoadReport report = new LoadReport(path);
+        long begin = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            ArrayDeque<Future<Rows>> parsing = new ArrayDeque<>();
+            Iterator<long[]> chunks = chunks(channel).iterator();
+            while (chunks.hasNext() || !parsing.isEmpty()) {
+                while (chunks.hasNext() && parsing.size() < threads * 2) {
+                    long[] chunk = chunks.next();
+                    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, chunk[0], chunk[1] - chunk[0]);
+                    parsing.add(pool.submit(() -> parse(buffer, kind)));
+                }
+                Rows rows = parsing.remove().get();
+                report.addRows(rows.size + rows.malformed.size());
+                for (var malformed : rows.malformed) report.reject(malformed, "Malformed row!");
+                String[] errors = kind.insert(graph, rows);
+                for (int i = 0; i < rows.size; i++) {
+                    if (errors[i] != null) report.reject(kind.describe(rows, i), errors[i]);
+                }
+            }
+        } catch (IOException e) {
+            report.fail(e.toString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report.fail("Loading is interrupted!");
+        } catch (ExecutionException e) {
+            report.fail(e.getCause().toString());
+        } finally {
+            pool.shutdownNow();
+        }
+        report.setNanos(System.nanoTime() - begin);
+        return report;
+    }
+
+    /**
+     * Splits file into chunks that each one ends at the end of a line
+     * @param channel File channel
+     * @return List of {start, end} positions
+     */
+    private List<long[]> chunks(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<long[]> chunks = new ArrayList<>();
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long start = 0;
+        while (start < size) {
+            long end = nextLineStart(channel, Math.min(size, start + chunkSize), size, probe);
+            chunks.add(new long[]{start, end});
+            start = end;
+        }
+        return chunks;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, long size, ByteBuffer probe) throws IOException {
+        while (position < size) {
+            probe.clear();
+            int n = channel.read(probe, position);
+            if (n <= 0) break;
+            for (int i = 0; i < n; i++) if (probe.get(i) == '\n') return position + i + 1;
+            position += n;
+        }
+        return size;
+    }
+
+    /**
+     * Parses all lines of a chunk
+     * @param buffer Mapped chunk
+     * @param kind Kind of file
+     * @return Parsed rows
+     */
+    private static Rows parse(ByteBuffer buffer, Kind kind) {
+        Rows rows = new Rows();
+        int limit = buffer.limit();
+        int start = 0;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && buffer.get(end) != '\n') end++;
+            int next = end + 1;
+            if (end > start && buffer.get(end - 1) == '\r') end--;
+            if (end > start && !(kind == Kind.SPARSE_FEATURE_MAP && buffer.get(start) == '#')) {
+                if (!kind.parse(buffer, start, end, rows)) rows.malformed.add(rows.string(buffer, start, end));
+            }
+            start = next;
+        }
+        return rows;
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to, byte b) {
+        for (int i = from; i < to; i++) if (buffer.get(i) == b) return i;
+        return -1;
+    }
+
+    /**
+     * Finds the name that is equal to the bytes of a field
+     * @param buffer Buffer
+     * @param from Start of field
+     * @param to End of field
+     * @param names Names in bytes
+     * @return Index of name or -1 if there is no such name
+     */
+    private static int match(ByteBuffer buffer, int from, int to, byte[][] names) {
+        Names:
+        for (int n = 0; n < names.length; n++) {
+            if (names[n].length != to - from) continue;
+            for (int i = 0; i < names[n].length; i++) if (buffer.get(from + i) != names[n][i]) continue Names;
+            return n;
+        }
+        return -1;
+    }
+
+    private static byte[][] names(Enum<?>[] values) {
+        byte[][] names = new byte[values.length][];
+        for (int i = 0; i < values.length; i++) names[i] = values[i].name().getBytes(StandardCharsets.US_ASCII);
+        return names;
+    }
+
+    /**
+     * Kinds of files and how their rows are parsed and added to graph
+     */
+    private enum Kind {
+        NODES {
+            @Override
+            boolean parse(ByteBuffer buffer, int start, int end, Rows rows) {
+                int first = indexOf(buffer, start, end, (byte) ',');
+                int second = (first < 0) ? -1 : indexOf(buffer, first + 1, end, (byte) ',');
+                if (second < 0) return false;
+                int type = match(buffer, second + 1, end, NODE_TYPE_NAMES);
+                if (type < 0) return false;
+                rows.add(rows.string(buffer, start, first), rows.string(buffer, first + 1, second), type);
+                return true;
+            }
+
+            @Override
+            String[] insert(Graph graph, Rows rows) {
+                NodeType[] types = new NodeType[rows.size];
+                for (int i = 0; i < rows.size; i++) types[i] = NODE_TYPES[rows.third[i]];
+                return graph.addNodes(rows.first, rows.second, types, rows.size);
+            }
+
+            @Override
+            String describe(Rows rows, int i) {
+                return rows.first[i] + "," + rows.second[i] + "," + NODE_TYPES[rows.third[i]];
+            }
+        },
+        EDGES {
+            @Override
+            boolean parse(ByteBuffer buffer, int start, int end, Rows rows) {
+                int first = indexOf(buffer, start, end, (byte) ',');
+                int second = (first < 0) ? -1 : indexOf(buffer, first + 1, end, (byte) ',');
+                if (second < 0) return false;
+                int type = match(buffer, second + 1, end, EDGE_TYPE_NAMES);
+                if (type < 0) return false;
+                rows.add(rows.string(buffer, start, first), rows.string(buffer, first + 1, second), type);
+                return true;
+            }
+
+            @Override
+            String[] insert(Graph graph, Rows rows) {
+                EdgeType[] types = new EdgeType[rows.size];
+                for (int i = 0; i < rows.size; i++) types[i] = EDGE_TYPES[rows.third[i]];
+                return graph.addEdges(rows.first, rows.second, types, rows.size);
+            }
+
+            @Override
+            String describe(Rows rows, int i) {
+                return rows.first[i] + "," + rows.second[i] + "," + EDGE_TYPES[rows.third[i]];
+            }
+        },
+        FEATURE_MAP {
+            @Override
+            boolean parse(ByteBuffer buffer, int start, int end, Rows rows) {
+                int comma = indexOf(buffer, start, end, (byte) ',');
+                if (comma < 0) return false;
+                String nodeID = rows.string(buffer, start, comma);
+                int column = 1;
+                for (int i = comma + 1; i <= end; i++) {
+                    if (i < end && buffer.get(i) != ',') continue;
+                    if (i - comma == 2 && buffer.get(i - 1) == '1') rows.add(nodeID, null, column);
+                    comma = i;
+                    column++;
+                }
+                return true;
+            }
+
+            @Override
+            String[] insert(Graph graph, Rows rows) {
+                return graph.addFeatures(rows.first, rows.third, rows.size);
+            }
+
+            @Override
+            String describe(Rows rows, int i) {
+                return rows.first[i] + "," + rows.third[i];
+            }
+        },
+        SPARSE_FEATURE_MAP {
+            @Override
+            boolean parse(ByteBuffer buffer, int start, int end, Rows rows) {
+                int comma = indexOf(buffer, start, end, (byte) ',');
+                if (comma < 0) return false;
+                String nodeID = rows.string(buffer, start, comma);
+                int mark = rows.size;
+                int featureID = 0, digits = 0;
+                boolean negative = false;
+                for (int i = comma + 1; i <= end; i++) {
+                    byte b = (i < end) ? buffer.get(i) : (byte) ',';
+                    if (b == ',') {
+                        if (digits == 0) {
+                            rows.size = mark;
+                            return false;
+                        }
+                        rows.add(nodeID, null, negative ? -featureID : featureID);
+                        featureID = 0;
+                        digits = 0;
+                        negative = false;
+                    } else if (b == '-' && digits == 0 && !negative) {
+                        negative = true;
+                    } else if (b >= '0' && b <= '9') {
+                        featureID = featureID * 10 + (b - '0');
+                        digits++;
+                    } else {
+                        rows.size = mark;
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            String[] insert(Graph graph, Rows rows) {
+                return FEATURE_MAP.insert(graph, rows);
+            }
+
+            @Override
+            String describe(Rows rows, int i) {
+                return FEATURE_MAP.describe(rows, i);
+            }
+        };
+
+        /**
+         * Parses a line
+         * @return false if the line is malformed
+         */
+        abstract boolean parse(ByteBuffer buffer, int start, int end, Rows rows);
+
+        /**
+         * Adds parsed rows to graph
+         * @return Array that gives error message of each row, null for added rows
+         */
+        abstract String[] insert(Graph graph, Rows rows);
+
+        /**
+         * Gives text of a parsed row for report
+         */
+        abstract String describe(Rows rows, int i);
+    }
+
+    /**
+     * Parsed rows of a chunk in parallel arrays. Third column is ordinal of type or feature id
+     */
+    private static class Rows {
+        private String[] first = new String[256];
+        private String[] second = new String[256];
+        private int[] third = new int[256];
+        private int size;
+        private final List<String> malformed = new ArrayList<>();
+        private byte[] scratch = new byte[64];
+
+        private void add(String first, String second, int third) {
+            if (size == this.first.length) {
+                int capacity = size * 2;
+                this.first = Arrays.copyOf(this.first, capacity);
+                this.second = Arrays.copyOf(this.second, capacity);
+                this.third = Arrays.copyOf(this.third, capacity);
+            }
+            this.first[size] = first;
+            this.second[size] = second;
+            this.third[size] = third;
+            size++;
+        }
+
+        private String string(ByteBuffer buffer, int from, int to) {
+            int length = to - from;
+            if (length > scratch.length) scratch = new byte[Math.max(length, scratch.length * 2)];
+            buffer.get(from, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package org.bihe.controll;
+
+import org.bihe.bean.BatchResult;
+import org.bihe.bean.ConcurrentGraph;
+import org.bihe.bean.Graph;
+import org.bihe.bean.GraphMetrics;
+import org.bihe.bean.MutationBatch;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies an unbounded stream of social events to a graph. Events are given by submit or read from the
+ * end of an event file that other programs append to, and they are put in bounded queues, one queue for
+ * each worker thread. All events of one post (its creation, hashtags, likes and comments) go to the same
+ * worker, and so do the follow and unfollow events of one user, so each of these groups is applied in the
+ * order it is submitted. Events of different groups can be applied in any order, for example two likes of
+ * one user on two posts. Each worker takes the events that are waiting in its queue, up to batch size, and
+ * applies them with one Graph.applyBatch.
+ * <p>
+ * When a queue is full, submit waits and the file reader stops reading, so producers are slowed down to
+ * the speed of workers (backpressure). A plain Graph is changed by one worker at a time, and a
+ * ConcurrentGraph applies each batch under its own lock. The graph must not be changed by other threads
+ * while the ingestor runs, unless it is a ConcurrentGraph
+ */
+public class EventIngestor implements Closeable {
+    private static final long POLL_MILLIS = 50;
+    private static final long TAIL_POLL_MILLIS = 100;
+
+    private final Graph graph;
+    private final int batchSize;
+    private final List<BlockingQueue<Pending>> queues;
+    private final List<Thread> workers;
+    private final List<Thread> readers;
+    private final long started;
+    private final AtomicLong submitted;
+    private final AtomicLong applied;
+    private final AtomicLong rejected;
+    private final AtomicLong malformed;
+    private final AtomicLong batches;
+    private final AtomicLong maxLatencyNanos;
+    private volatile String lastError;
+    private volatile boolean running;
+
+    /**
+     * EventIngestor Constructor. Starts the worker threads
+     * @param graph Graph that events are applied to
+     * @param workers Number of worker threads
+     * @param queueCapacity Number of events that each worker queue holds before producers wait
+     * @param batchSize Maximum number of events of one batch
+     */
+    public EventIngestor(Graph graph, int workers, int queueCapacity, int batchSize) {
+        if (workers < 1 || queueCapacity < 1 || batchSize < 1)
+            throw new IllegalArgumentException("Workers, queue capacity and batch size must be positive!");
+        this.graph = graph;
+        this.batchSize = batchSize;
+        this.queues = new ArrayList<>(workers);
+        this.workers = new ArrayList<>(workers);
+        this.readers = new ArrayList<>();
+        this.started = System.nanoTime();
+        this.submitted = new AtomicLong();
+        this.applied = new AtomicLong();
+        this.rejected = new AtomicLong();
+        this.malformed = new AtomicLong();
+        this.batches = new AtomicLong();
+        this.maxLatencyNanos = new AtomicLong();
+        this.running = true;
+        for (int i = 0; i < workers; i++) {
+            BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(queueCapacity);
+            queues.add(queue);
+            var worker = new Thread(() -> work(queue), "event-worker-" + i);
+            this.workers.add(worker);
+            worker.start();
+        }
+    }
+
+    //-------------------------------------Producers---------------------------------------
+
+    /**
+     * Puts an event in the queue of its worker and waits while the queue is full
+     * @param event Event
+     * @throws InterruptedException if the thread is interrupted while it waits
+     * @throws IllegalStateException if the ingestor is closed
+     */
+    public void submit(SocialEvent event) throws InterruptedException {
+        if (!running) throw new IllegalStateException("Ingestor is closed!");
+        submitted.incrementAndGet();
+        try {
+            queueOf(event).put(new Pending(event));
+        } catch (InterruptedException e) {
+            submitted.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Puts an event in the queue of its worker if it has space in given time
+     * @param event Event
+     * @param timeout Time to wait
+     * @param unit Unit of time
+     * @return false if the queue stays full
+     * @throws InterruptedException if the thread is interrupted while it waits
+     * @throws IllegalStateException if the ingestor is closed
+     */
+    public boolean offer(SocialEvent event, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!running) throw new IllegalStateException("Ingestor is closed!");
+        submitted.incrementAndGet();
+        boolean queued = false;
+        try {
+            queued = queueOf(event).offer(new Pending(event), timeout, unit);
+            return queued;
+        } finally {
+            if (!queued) submitted.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reads events from a file in a new thread. The thread reads the file from its beginning and then waits
+     * for lines that are appended to it, until the ingestor is closed. Lines that are not valid events are
+     * counted as malformed
+     * @param path Path of event file
+     */
+    public void follow(String path) {
+        var reader = new Thread(() -> tail(path), "event-tail-" + new File(path).getName());
+        synchronized (readers) {
+            readers.add(reader);
+        }
+        reader.start();
+    }
+
+    private void tail(String path) {
+        try (var in = new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            StringBuilder line = new StringBuilder();
+            while (running) {
+                int read = in.read(buffer);
+                if (read < 0) {
+                    // end of file for now, a line without its line end is kept until the rest is appended
+                    Thread.sleep(TAIL_POLL_MILLIS);
+                    continue;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != '\n') {
+                        line.append(buffer[i]);
+                        continue;
+                    }
+                    submitLine(line.toString().strip());
+                    line.setLength(0);
+                }
+            }
+        } catch (IOException e) {
+            lastError = path + ": " + e.getMessage();
+        } catch (InterruptedException | IllegalStateException e) {
+            // the ingestor is closed
+        }
+    }
+
+    private void submitLine(String line) throws InterruptedException {
+        if (line.isEmpty()) return;
+        SocialEvent event;
+        try {
+            event = SocialEvent.parse(line);
+        } catch (IllegalArgumentException e) {
+            malformed.incrementAndGet();
+            lastError = line + " -> " + e.getMessage();
+            return;
+        }
+        submit(event);
+    }
+
+    private BlockingQueue<Pending> queueOf(SocialEvent event) {
+        return queues.get(Math.floorMod(event.partitionKey().hashCode(), queues.size()));
+    }
+
+    //-------------------------------------Workers-----------------------------------------
+
+    private void work(BlockingQueue<Pending> queue) {
+        var batch = new MutationBatch(batchSize);
+        var events = new ArrayList<Pending>(batchSize);
+        while (true) {
+            Pending first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (first == null) {
+                if (!running) return;
+                continue;
+            }
+            events.add(first);
+            queue.drainTo(events, batchSize - 1);
+            apply(batch, events);
+            events.clear();
+            batch.clear();
+        }
+    }
+
+    private void apply(MutationBatch batch, List<Pending> events) {
+        for (var pending : events) pending.event.addTo(batch);
+        var result = (GraphMetrics.unwrap(graph) instanceof ConcurrentGraph) ? graph.applyBatch(batch) : applyAlone(batch);
+        batches.incrementAndGet();
+        applied.addAndGet(result.getApplied());
+        if (result.getRejected() > 0) {
+            rejected.addAndGet(result.getRejected());
+            for (int i = result.size() - 1; i >= 0; i--) {
+                if (result.isApplied(i)) continue;
+                lastError = events.get(i).event + " -> " + result.getError(i);
+                break;
+            }
+        }
+        long latency = System.nanoTime() - events.get(0).submitted;
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+    }
+
+    private BatchResult applyAlone(MutationBatch batch) {
+        synchronized (graph) {
+            return graph.applyBatch(batch);
+        }
+    }
+
+    /**
+     * Stops reading event files, applies the events that are in the queues and stops the workers. Events
+     * must not be submitted while the ingestor is closed, as they may not be applied
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (readers) {
+            for (var reader : readers) reader.interrupt();
+        }
+        try {
+            for (var reader : readers) reader.join();
+            for (var worker : workers) worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //-------------------------------------Metrics-----------------------------------------
+
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    public long getApplied() {
+        return applied.get();
+    }
+
+    /**
+     * Gives number of events that are rejected by the graph, for example a follow of a user that not exists
+     * @return Number of rejected events
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Gives number of lines of event files that are not valid events
+     * @return Number of malformed lines
+     */
+    public long getMalformed() {
+        return malformed.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Gives message of the last rejected event or malformed line
+     * @return Message or null if all events are applied
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Gives number of events that are submitted and not applied or rejected yet
+     * @return Number of waiting events
+     */
+    public long lag() {
+        return submitted.get() - applied.get() - rejected.get();
+    }
+
+    /**
+     * Gives how long the oldest waiting event is in its queue
+     * @return Age of oldest event in milliseconds, zero if queues are empty
+     */
+    public long lagMillis() {
+        long now = System.nanoTime(), oldest = now;
+        for (var queue : queues) {
+            var head = queue.peek();
+            if (head != null) oldest = Math.min(oldest, head.submitted);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(now - oldest);
+    }
+
+    /**
+     * Gives the longest time from submit of the first event of a batch until the batch is applied
+     * @return Latency in milliseconds
+     */
+    public double maxLatencyMillis() {
+        return maxLatencyNanos.get() / 1e6;
+    }
+
+    /**
+     * Gives number of applied and rejected events per second since start
+     * @return Events per second
+     */
+    public double throughput() {
+        long nanos = System.nanoTime() - started;
+        return (nanos == 0) ? 0 : (applied.get() + rejected.get()) * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return "submitted: " + getSubmitted() + ", applied: " + getApplied() + ", rejected: " + getRejected()
+                + ", malformed: " + getMalformed() + ", batches: " + getBatches() + ", lag: " + lag() + " events / "
+                + lagMillis() + " ms, " + Math.round(throughput()) + " events/s";
+    }
+
+    /**
+     * Event in a queue with the time it is submitted
+     */
+    private static class Pending {
+        private final SocialEvent event;
+        private final long submitted;
+
+        private Pending(SocialEvent event) {
+            this.event = event;
+            this.submitted = System.nanoTime();
+        }
+    }
+}
@@ -5,7 +5,6 @@ import org.bihe.exception.ExistElementException;
 
 import java.io.*;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 
 /**
@@ -16,10 +15,11 @@ public class FileManagement {
     public static final String EDGES_PATH = "files/edges.csv";
     public static final String FEATURES_PATH = "files/features.csv";
     public static final String FEATURES_MAP_PATH = "files/feature_map.csv";
+    public static final String SPARSE_FEATURE_MAP_HEADER = "#sparse";
+    private static final int EDGE_BATCH_SIZE = 4096;
 
     public static void initNodes(Graph graph, String path) {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(path));
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
             String row;
             while ((row = reader.readLine()) != null) {
                 String[] data = row.split(",");
@@ -34,44 +34,89 @@ public class FileManagement {
         }
     }
 
+    /**
+     * Loads nodes, edges and feature map files in bulk and prints the rows that are rejected and the files
+     * that cannot be read
+     * @param graph Graph
+     * @param threads Number of threads that parse the files
+     * @return Reports of nodes, edges and feature map files
+     */
+    public static List<LoadReport> bulkInitGraph(Graph graph, int threads) {
+        BulkLoader loader = new BulkLoader(threads);
+        List<LoadReport> reports = List.of(loader.loadNodes(graph, NODES_PATH), loader.loadEdges(graph, EDGES_PATH),
+                loader.loadFeatureMap(graph, FEATURES_MAP_PATH));
+        for (var report : reports) {
+            if (!report.isComplete()) System.err.println(report.getPath() + ": " + report.getFailure());
+            for (var row : report.getRejected()) System.err.println(report.getPath() + ": " + row);
+        }
+        return reports;
+    }
+
     public static void writeToNodes(Graph graph) {
+        writeToNodes(graph, NODES_PATH);
+    }
+
+    public static void writeToNodes(Graph graph, String path) {
         Collection<Node> nodes = graph.getNodes().values();
         StringBuilder sb = new StringBuilder();
         for (var node : nodes) {
             sb.append(node.getId()).append(",").append(node.getLabel()).append(",").append(node.getType().name()).append("\n");
         }
-        writeToFile(sb, NODES_PATH);
+        writeToFile(sb, path);
     }
 
+    /**
+     * Reads edges file and adds its edges in batches. Rows that cannot be added are printed and do not stop
+     * the loading
+     * @param graph Graph
+     * @param path Path of edges file
+     */
     public static void initEdges(Graph graph, String path) {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(path));
+        var batch = new MutationBatch(EDGE_BATCH_SIZE);
+        String[] rows = new String[EDGE_BATCH_SIZE];
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
             String row;
             while ((row = reader.readLine()) != null) {
                 String[] data = row.split(",");
-                graph.addEdge(data[0], data[1], data[2]);
+                try {
+                    rows[batch.addEdge(data[0], data[1], EdgeType.valueOf(data[2]))] = row;
+                } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+                    System.err.println(path + ": " + row + " -> This row is not a valid edge!");
+                    continue;
+                }
+                if (batch.size() == EDGE_BATCH_SIZE) applyEdges(graph, batch, rows, path);
             }
+            applyEdges(graph, batch, rows, path);
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    private static void applyEdges(Graph graph, MutationBatch batch, String[] rows, String path) {
+        var result = graph.applyBatch(batch);
+        for (int i = 0; i < result.size(); i++) {
+            if (!result.isApplied(i)) System.err.println(path + ": " + rows[i] + " -> " + result.getError(i));
+        }
+        batch.clear();
+    }
+
     public static void writeToEdges(Graph graph) {
-        HashMap<Node, List<Edge>> adj = graph.getAdjacencyList();
+        writeToEdges(graph, EDGES_PATH);
+    }
+
+    public static void writeToEdges(Graph graph, String path) {
         StringBuilder sb = new StringBuilder();
-        for (var node : adj.keySet()) {
-            if (adj.get(node).isEmpty()) continue;
-            for (var edge : adj.get(node)) {
+        for (var node : graph.getNodes().values()) {
+            for (var edge : graph.getEdges(node.getId())) {
                 sb.append(node.getId()).append(",").append(edge.getDestination().getId())
                         .append(",").append(edge.getType().name()).append("\n");
             }
         }
-        writeToFile(sb, EDGES_PATH);
+        writeToFile(sb, path);
     }
 
     public static void initFeatures(String path) {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(path));
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
             String row;
             while ((row = reader.readLine()) != null) {
                 String[] data = row.split(",");
@@ -88,25 +133,37 @@ public class FileManagement {
     }
 
     public static void writeToFeatures(){
+        writeToFeatures(FEATURES_PATH);
+    }
+
+    public static void writeToFeatures(String path){
         StringBuilder sb = new StringBuilder();
         for (var feature: MainController.features.values()){
             sb.append(feature.getId()).append(",").append(feature.getLabel()).append("\n");
         }
-        writeToFile(sb, FEATURES_PATH);
+        writeToFile(sb, path);
     }
 
+    /**
+     * Reads feature map line by line. The file can be sparse (first line is the sparse header and each
+     * row is node id followed by feature ids) or dense (each row is node id followed by a 0 or 1 column
+     * for each feature id)
+     * @param graph Graph
+     * @param path Path of file
+     */
     public static void initFeatureMap(Graph graph, String path) {
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(path));
-            String row;
-            while ((row = reader.readLine()) != null) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            String row = reader.readLine();
+            boolean sparse = SPARSE_FEATURE_MAP_HEADER.equals(row);
+            if (sparse) row = reader.readLine();
+            for (; row != null; row = reader.readLine()) {
                 String[] data = row.split(",");
                 String nodeID = data[0];
                 for (int i = 1; i < data.length; i++) {
-                    if (data[i].equals("1")) {
+                    if (sparse || data[i].equals("1")) {
                         try {
-                            graph.addFeature(nodeID, i);
-                        } catch (ExistElementException e) {
+                            graph.addFeature(nodeID, sparse ? Integer.parseInt(data[i]) : i);
+                        } catch (ExistElementException | RuntimeException e) {
                             e.printStackTrace();
                         }
                     }
@@ -117,24 +174,49 @@ public class FileManagement {
         }
     }
 
+    /**
+     * Return true if given feature map file starts with the sparse header
+     * @param path Path of file
+     * @return true if the file is sparse
+     */
+    public static boolean isSparseFeatureMap(String path) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+            return SPARSE_FEATURE_MAP_HEADER.equals(reader.readLine());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes feature map in sparse format: the header and then node id followed by its feature ids for
+     * each post or message that has features. Rows are streamed to the file one by one
+     * @param graph Graph
+     */
     public static void writeToFeatureMap(Graph graph){
-        HashMap<Node, List<Feature>> features = graph.getFeatures();
-        StringBuilder sb = new StringBuilder();
-        for (var node: features.keySet()){
-            List<Feature> featureList = features.get(node);
-            sb.append(node.getId()).append(",");
-            for (var f: MainController.features.values()){
-                if (featureList.contains(f)){
-                    sb.append("1");
-                }else{
-                    sb.append("0");
+        writeToFeatureMap(graph, FEATURES_MAP_PATH);
+    }
+
+    /**
+     * Writes feature map in sparse format to given path
+     * @param graph Graph
+     * @param path Path of file
+     */
+    public static void writeToFeatureMap(Graph graph, String path){
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(path, false))) {
+            out.write(SPARSE_FEATURE_MAP_HEADER);
+            out.newLine();
+            for (var entry : graph.getFeatures().entrySet()) {
+                if (entry.getValue().isEmpty()) continue;
+                out.write(entry.getKey().getId());
+                for (var feature : entry.getValue()) {
+                    out.write(',');
+                    out.write(Integer.toString(feature.getId()));
                 }
-                sb.append(",");
+                out.newLine();
             }
-            sb.deleteCharAt(sb.length()-1);
-            sb.append("\n");
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        writeToFile(sb, FEATURES_MAP_PATH);
     }
 
     private static void writeToFile(StringBuilder sb, String path){
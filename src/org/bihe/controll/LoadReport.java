@@ -0,0 +1,87 @@
+package org.bihe.controll;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores result of loading a file: number of rows, rows that are rejected and elapsed time. If the file
+ * cannot be read to its end, the report has the failure and just the rows before it are loaded
+ */
+public class LoadReport {
+    private final String path;
+    private final List<String> rejected;
+    private long rows;
+    private long nanos;
+    private String failure;
+
+    /**
+     * LoadReport Constructor
+     * @param path Path of loaded file
+     */
+    public LoadReport(String path) {
+        this.path = path;
+        this.rejected = new ArrayList<>();
+    }
+
+    void addRows(long rows) {
+        this.rows += rows;
+    }
+
+    void reject(String row, String message) {
+        rejected.add(row + " -> " + message);
+    }
+
+    void fail(String message) {
+        failure = message;
+    }
+
+    void setNanos(long nanos) {
+        this.nanos = nanos;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getLoaded() {
+        return rows - rejected.size();
+    }
+
+    public List<String> getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Gives the reason that the file could not be read to its end
+     * @return Message of failure, or null if the whole file is read
+     */
+    public String getFailure() {
+        return failure;
+    }
+
+    public boolean isComplete() {
+        return failure == null;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Gives number of rows that are read per second
+     * @return Rows per second
+     */
+    public double rowsPerSecond() {
+        return (nanos == 0) ? 0 : rows * 1_000_000_000.0 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return path + ": " + rows + " rows, " + getLoaded() + " loaded, " + rejected.size() + " rejected, "
+                + Math.round(rowsPerSecond()) + " rows/s" + (isComplete() ? "" : ", failed: " + failure);
+    }
+}
@@ -3,10 +3,24 @@ package org.bihe.controll;
 import org.bihe.bean.*;
 import org.bihe.exception.ExistElementException;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class MainController {
-    public static HashMap<Integer, Feature> features = new HashMap<>();
+    public static final int TOP_ITEMS = 3;
+    public static final Map<Integer, Feature> features = new ConcurrentHashMap<>();
+    public static final long LOG_SYNC_INTERVAL_MILLIS = 100;
+    public static final long LOG_CHECKPOINT_BYTES = 16L << 20;
+    public static final String METRICS_PATH = "files/metrics.json";
+    private static MutationLog log;
+    private static boolean logDropped;
 
     /**
      * Add feature to features list
@@ -31,25 +45,169 @@ public class MainController {
         return (type.equals(FeatureType.HASHTAG) && label.charAt(0) == '#') || (type.equals(FeatureType.MENTION) && label.charAt(0) == '@');
     }
 
-    private static void initializeGraph(Graph graph) {
-        FileManagement.initFeatures(FileManagement.FEATURES_PATH);
-        FileManagement.initNodes(graph, FileManagement.NODES_PATH);
-        FileManagement.initEdges(graph, FileManagement.EDGES_PATH);
-        FileManagement.initFeatureMap(graph, FileManagement.FEATURES_MAP_PATH);
+    /**
+     * Loads graph from binary snapshot if it is newer than the CSV files, otherwise from the CSV files.
+     * Loading of files is timed in GraphMetrics
+     * @param factory Gives an empty graph
+     * @return Loaded graph
+     */
+    private static Graph initializeGraph(Supplier<Graph> factory) {
+        if (snapshotIsNewest()) {
+            Graph graph = factory.get();
+            try {
+                GraphMetrics.time("BinarySnapshot.read", () -> BinarySnapshot.read(graph, BinarySnapshot.SNAPSHOT_PATH));
+                return graph;
+            } catch (IOException e) {
+                System.out.println("Snapshot cannot be loaded, CSV files are used!\n" + e.getMessage());
+                features.clear();
+            }
+        }
+        Graph graph = factory.get();
+        GraphMetrics.time("FileManagement.initFeatures", () -> {
+            FileManagement.initFeatures(FileManagement.FEATURES_PATH);
+            return null;
+        });
+        GraphMetrics.time("FileManagement.bulkInitGraph",
+                () -> FileManagement.bulkInitGraph(graph, Runtime.getRuntime().availableProcessors()));
+        return graph;
+    }
+
+    /**
+     * Return true if snapshot file exists and it is newer than all CSV files
+     * @return true if snapshot is newest
+     */
+    private static boolean snapshotIsNewest() {
+        long snapshot = new File(BinarySnapshot.SNAPSHOT_PATH).lastModified();
+        if (snapshot == 0) return false;
+        for (var path : new String[]{FileManagement.NODES_PATH, FileManagement.EDGES_PATH,
+                FileManagement.FEATURES_PATH, FileManagement.FEATURES_MAP_PATH}) {
+            if (new File(path).lastModified() > snapshot) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Saves graph in binary snapshot, and in CSV files if the snapshot cannot be written. Writing of files is
+     * timed in GraphMetrics
+     * @param graph Graph
+     */
+    private static void saveData(Graph graph) {
+        try {
+            GraphMetrics.time("BinarySnapshot.write", () -> {
+                BinarySnapshot.write(graph, BinarySnapshot.SNAPSHOT_PATH);
+                return null;
+            });
+        } catch (IOException e) {
+            System.out.println("Snapshot cannot be written, CSV files are written!\n" + e.getMessage());
+            writeData(graph);
+        }
+    }
+
+    /**
+     * Applies changes of mutation log that are made after the graph was saved, and opens the log for next changes
+     * @param graph Loaded graph
+     */
+    private static void openLog(Graph graph) {
+        try {
+            var report = MutationLog.replay(graph, MutationLog.LOG_PATH);
+            if (report.getRows() > 0) System.out.println("Recovered changes: " + report);
+            log = new MutationLog(MutationLog.LOG_PATH, LOG_SYNC_INTERVAL_MILLIS, LOG_CHECKPOINT_BYTES);
+        } catch (IOException e) {
+            System.out.println("Mutation log cannot be opened, changes are saved just on exit!\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Records a change that is applied to the graph in mutation log, and saves the graph and truncates the log
+     * when it is big
+     * @param graph Changed graph
+     * @param record Action that records the change
+     */
+    private static void logged(Graph graph, Consumer<MutationLog> record) {
+        if (log == null) return;
+        try {
+            record.accept(log);
+        } catch (IllegalStateException | UncheckedIOException e) {
+            System.out.println("The change is applied but it cannot be written to mutation log, the graph is saved just on exit!\n" + e.getMessage());
+            dropLog();
+            return;
+        }
+        if (!log.needsCheckpoint()) return;
+        try {
+            log.checkpoint(() -> BinarySnapshot.write(graph, BinarySnapshot.SNAPSHOT_PATH));
+        } catch (IOException e) {
+            System.out.println("Checkpoint cannot be written!\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Closes a mutation log that cannot be written. Changes are not logged after it, so the log is deleted
+     * when the graph is saved on exit, otherwise it would be replayed on the saved graph
+     */
+    private static void dropLog() {
+        try {
+            log.close();
+        } catch (IOException e) {
+            // records that are not synced yet are lost, the graph itself has them
+        }
+        log = null;
+        logDropped = true;
+    }
+
+    /**
+     * Saves graph and closes mutation log. The log is truncated only if the snapshot is written
+     * @param graph Graph
+     */
+    private static void closeLog(Graph graph) {
+        try {
+            log.checkpoint(() -> BinarySnapshot.write(graph, BinarySnapshot.SNAPSHOT_PATH));
+        } catch (IOException e) {
+            System.out.println("Snapshot cannot be written, CSV files are written!\n" + e.getMessage());
+            writeData(graph);
+        }
+        try {
+            log.close();
+        } catch (IOException e) {
+            System.out.println("Mutation log cannot be closed!\n" + e.getMessage());
+        }
+    }
+
+    private static void deleteLog() {
+        try {
+            Files.deleteIfExists(Path.of(MutationLog.LOG_PATH));
+        } catch (IOException e) {
+            System.out.println("Mutation log cannot be deleted, delete " + MutationLog.LOG_PATH + " before next start!\n" + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes metrics of graph methods if the program is started with -Dgraph.metrics=true
+     * @param graph Graph
+     */
+    private static void writeMetrics(Graph graph) {
+        if (!GraphMetrics.ENABLED) return;
+        try {
+            GraphMetrics.write(graph, METRICS_PATH);
+        } catch (IOException e) {
+            System.out.println("Metrics cannot be written!\n" + e.getMessage());
+        }
     }
 
     private static void writeData(Graph graph) {
-        FileManagement.writeToEdges(graph);
-        FileManagement.writeToFeatureMap(graph);
-        FileManagement.writeToFeatures();
-        FileManagement.writeToNodes(graph);
+        GraphMetrics.time("FileManagement.writeData", () -> {
+            FileManagement.writeToEdges(graph);
+            FileManagement.writeToFeatureMap(graph);
+            FileManagement.writeToFeatures();
+            FileManagement.writeToNodes(graph);
+            return null;
+        });
     }
 
     public static void mainMenu() {
         System.out.println("WELCOME");
         Scanner sc = new Scanner(System.in);
-        Graph graph = new Graph();
-        initializeGraph(graph);
+        Graph graph = GraphMetrics.instrument(initializeGraph(Graph::new));
+        openLog(graph);
         Loop:
         while (true) {
             printMainMenu();
@@ -60,6 +218,15 @@ public class MainController {
                     case 2 -> changeModelMenu(graph, sc);
                     case 3 -> {
                         writeData(graph);
+                        System.out.println("CSV files exported successfully.");
+                    }
+                    case 4 -> {
+                        if (log == null) {
+                            saveData(graph);
+                            if (logDropped) deleteLog();
+                        }
+                        else closeLog(graph);
+                        writeMetrics(graph);
                         break Loop;
                     }
                     default -> System.out.println("Please enter a correct number!");
@@ -71,9 +238,26 @@ public class MainController {
         }
     }
 
+    /**
+     * Loads graph with the changes of mutation log and answers queries over HTTP until the program stops.
+     * The log is just read, so the server can run next to the menu
+     * @param port Port of server
+     * @param threads Number of threads that answer queries
+     * @throws IOException if the server cannot be started
+     */
+    public static void serve(int port, int threads) throws IOException {
+        var graph = (ConcurrentGraph) initializeGraph(ConcurrentGraph::new);
+        var report = MutationLog.replay(graph, MutationLog.LOG_PATH);
+        if (report.getRows() > 0) System.out.println("Recovered changes: " + report);
+        var server = new QueryServer(graph, port, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        System.out.println("Query server is listening on " + server.getURL() + " with " + threads + " threads");
+    }
+
     private static void printMainMenu() {
         System.out.println("Please choose one of choices by entering number:\n" +
-                "1. Menu\n2. Change Model\n3. Exit");
+                "1. Menu\n2. Change Model\n3. Export CSV\n4. Exit");
     }
 
     private static void modelMenu(Graph graph, Scanner sc) {
@@ -84,16 +268,16 @@ public class MainController {
                 byte in = sc.nextByte();
                 switch (in) {
                     case 1:
-                        printThreeTop(graph.threeTop(graph.calculateFollowersOrLikes(NodeType.user, EdgeType.follow)));
+                        printThreeTop(graph.topFollowersOrLikes(NodeType.user, EdgeType.follow, TOP_ITEMS));
                         break;
                     case 2:
-                        printThreeTop(graph.threeTop(graph.calculateFollowersOrLikes(NodeType.post, EdgeType.like)));
+                        printThreeTop(graph.topFollowersOrLikes(NodeType.post, EdgeType.like, TOP_ITEMS));
                         break;
                     case 3:
-                        printThreeTop(graph.threeTop(graph.calculateHashtagsOrMentions(FeatureType.HASHTAG)));
+                        printThreeTop(graph.topHashtagsOrMentions(FeatureType.HASHTAG, TOP_ITEMS));
                         break;
                     case 4:
-                        printThreeTop(graph.threeTop(graph.calculateHashtagsOrMentions(FeatureType.MENTION)));
+                        printThreeTop(graph.topHashtagsOrMentions(FeatureType.MENTION, TOP_ITEMS));
                         break;
                     case 5:
                         System.out.println("Please enter a userID:");
@@ -101,7 +285,7 @@ public class MainController {
                         System.out.println("----------------------------------------");
                         try {
                             String suggested = graph.suggestedItem(userID, NodeType.user);
-                            System.out.println(suggested);
+                            System.out.println((suggested != null) ? suggested : "There is no suggestion for this user!");
                         } catch (NoSuchElementException | IllegalArgumentException e) {
                             System.out.println(e.getMessage());
                         }
@@ -113,7 +297,7 @@ public class MainController {
                         System.out.println("----------------------------------------");
                         try {
                             String suggested = graph.suggestedItem(userID2, NodeType.post);
-                            System.out.println(suggested);
+                            System.out.println((suggested != null) ? suggested : "There is no suggestion for this user!");
                         } catch (NoSuchElementException | IllegalArgumentException e) {
                             System.out.println(e.getMessage());
                         }
@@ -133,7 +317,7 @@ public class MainController {
                         String userID3 = sc.next();
                         System.out.println("----------------------------------------");
                         try {
-                            int betweenneesCentrality = graph.betweennessCentrality(userID3);
+                            double betweenneesCentrality = graph.betweennessCentrality(userID3);
                             System.out.println(betweenneesCentrality);
                         } catch (IllegalArgumentException | NoSuchElementException e) {
                             System.out.println(e.getMessage());
@@ -141,6 +325,9 @@ public class MainController {
                         System.out.println("----------------------------------------");
                         break;
                     case 11:
+                        featureSearch(graph, sc);
+                        break;
+                    case 12:
                         break Loop;
                     default:
                         System.out.println("Please enter correct number!");
@@ -164,7 +351,33 @@ public class MainController {
                 "8. Find path\n" +
                 "9. Connective most users\n" +
                 "10. Betweenness centrality\n" +
-                "11. Exit");
+                "11. Search hashtags and mentions\n" +
+                "12. Exit");
+    }
+
+    private static void featureSearch(Graph graph, Scanner sc) {
+        System.out.println("1. Posts and messages that have a feature\n2. Hashtags that are used with a feature\n" +
+                "3. Number of posts and messages that have a feature");
+        try {
+            byte in = sc.nextByte();
+            System.out.println("Please enter a feature ID: ");
+            int featureId = Integer.parseInt(sc.next());
+            System.out.println("----------------------------------------");
+            switch (in) {
+                case 1 -> System.out.println(graph.listOfNodesWithFeature(featureId));
+                case 2 -> System.out.println(graph.coOccurringFeatures(featureId, FeatureType.HASHTAG));
+                case 3 -> System.out.println(graph.numberOfNodesWithFeature(featureId));
+                default -> System.out.println("Please enter correct number!");
+            }
+            System.out.println("----------------------------------------");
+        } catch (NumberFormatException e) {
+            System.out.println("Please enter a number for featureID!");
+        } catch (InputMismatchException e) {
+            System.out.println("Please enter a number!");
+            sc.next();
+        } catch (NoSuchElementException e) {
+            System.out.println(e.getMessage());
+        }
     }
 
     private static void densityMenu(Graph graph, Scanner sc) {
@@ -292,7 +505,7 @@ public class MainController {
         for (var node : graph.mostNumberOfUsersConnectedGraph()) {
             sb.append(node.getId());
             sb.append(":[");
-            for (var e : graph.getAdjacencyList().get(node)) {
+            for (var e : graph.getEdges(node.getId())) {
                 sb.append(e.getDestination().getId()).append(", ");
             }
             sb.append("]\n");
@@ -311,6 +524,7 @@ public class MainController {
         String type = sc.next();
         try {
             graph.addNode(id, label, type);
+            logged(graph, l -> l.addNode(id, label, type));
             System.out.println("Node added successfully.");
         } catch (ExistElementException e) {
             System.out.println("Unfortunately, this node cannot be added!\n" + e.getMessage());
@@ -328,6 +542,7 @@ public class MainController {
         String type = sc.next();
         try {
             graph.addEdge(to, from, type);
+            logged(graph, l -> l.addEdge(to, from, type));
             System.out.println("Edge added successfully.");
         } catch (NoSuchElementException | IllegalStateException e) {
             System.out.println("Unfortunately, this edge cannot be added!\n" + e.getMessage());
@@ -352,9 +567,12 @@ public class MainController {
                     String label = sc.next();
                     System.out.println("Please enter a type: " + Arrays.toString(FeatureType.values()));
                     String type = sc.next();
-                    addFeature(idC, FeatureType.valueOf(type.toUpperCase()), label);
+                    var featureType = FeatureType.valueOf(type.toUpperCase());
+                    addFeature(idC, featureType, label);
+                    logged(graph, l -> l.defineFeature(idC, featureType, label));
                     System.out.println("Feature just added successfully to the feature list.");
                     graph.addFeature(nodeID, idC);
+                    logged(graph, l -> l.addFeature(nodeID, idC));
                     System.out.println("Feature added successfully to the node.");
                 }
                 case 2 -> {
@@ -362,6 +580,7 @@ public class MainController {
                     String id = sc.next();
                     int idC = Integer.parseInt(id);
                     graph.addFeature(nodeID, idC);
+                    logged(graph, l -> l.addFeature(nodeID, idC));
                     System.out.println("Feature added successfully to the node.");
                 }
                 default -> System.out.println("Please enter correct number!");
@@ -380,7 +599,10 @@ public class MainController {
         String id = sc.next();
         if (!graph.removeNode(id)) {
             System.out.println("This node cannot be found!");
-        } else System.out.println("Node removed successfully.");
+        } else {
+            logged(graph, l -> l.removeNode(id));
+            System.out.println("Node removed successfully.");
+        }
     }
 
     private static void removeEdge(Graph graph, Scanner sc) {
@@ -393,7 +615,10 @@ public class MainController {
         try {
             if (!graph.removeEdge(from, to, type)) {
                 System.out.println("This edge not be found!");
-            } else System.out.println("Edge removed successfully.");
+            } else {
+                logged(graph, l -> l.removeEdge(from, to, type));
+                System.out.println("Edge removed successfully.");
+            }
         } catch (IllegalArgumentException e) {
             System.out.println("Unfortunately, this edge cannot be removed!\nThis type not exists. You can enter these types: " + Arrays.toString(EdgeType.values()));
         }
@@ -408,11 +633,10 @@ public class MainController {
                     System.out.println("Please enter a feature ID: ");
                     String fID = sc.next();
                     int featureId = Integer.parseInt(fID);
-                    if (features.get(featureId) == null) throw new NoSuchElementException("This feature not be found!");
-                    for (var node : graph.getFeatures().keySet()) {
-                        graph.getFeatures().get(node).remove(features.get(featureId));
-                    }
+                    if (!graph.removeFeatureFromAllNodes(featureId))
+                        throw new NoSuchElementException("This feature not be found!");
                     features.remove(featureId);
+                    logged(graph, l -> l.removeFeatureFromAllNodes(featureId));
                     System.out.println("Feature removed successfully.");
                 }
                 case 2 -> {
@@ -424,7 +648,10 @@ public class MainController {
                     String nodeID = sc.next();
                     if (!graph.removeFeature(nodeID, featureId)) {
                         System.out.println("This node not be found!");
-                    } else System.out.println("Feature removed successfully.");
+                    } else {
+                        logged(graph, l -> l.removeFeature(nodeID, featureId));
+                        System.out.println("Feature removed successfully.");
+                    }
                 }
             }
         } catch (NumberFormatException e) {
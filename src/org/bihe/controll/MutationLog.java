@@ -0,0 +1,333 @@
+package org.bihe.controll;
+
+import org.bihe.bean.FeatureType;
+import org.bihe.bean.Graph;
+import org.bihe.exception.ExistElementException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of changes of a graph, so changes that are made after the last snapshot are not lost
+ * when the program stops. On start the log is replayed on the graph that is loaded from the snapshot or
+ * CSV files, and on checkpoint the graph is saved and the log is truncated.
+ * <p>
+ * It is not a write-ahead log: a change is appended after it is applied to the graph, so just the changes
+ * that succeed are in the log, and a change that is applied just before the program stops can be lost.
+ * <p>
+ * Each record is its length, its CRC32 and its data, so a record that is written partly when the program
+ * stops is found and dropped. A length more than the biggest possible record is read as the end of the log. Records are collected in memory and written with one fsync every sync
+ * interval (group commit), so a change is on disk at most one interval after it is made. With interval
+ * zero each change is synced before its method returns.
+ * <p>
+ * A record that cannot be applied on replay, for example an existing node, is rejected and the next records
+ * are applied, so a log that is replayed on a snapshot that already has its changes (when the program stops
+ * between writing the snapshot and truncating the log) gives the same graph
+ */
+public class MutationLog implements Closeable {
+    public static final String LOG_PATH = "files/graph.log";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 + 3 * (2 + 65535);
+
+    private static final byte ADD_NODE = 1;
+    private static final byte REMOVE_NODE = 2;
+    private static final byte ADD_EDGE = 3;
+    private static final byte REMOVE_EDGE = 4;
+    private static final byte DEFINE_FEATURE = 5;
+    private static final byte ADD_FEATURE = 6;
+    private static final byte REMOVE_FEATURE = 7;
+    private static final byte REMOVE_FEATURE_FROM_ALL_NODES = 8;
+
+    private final FileChannel channel;
+    private final long syncIntervalMillis;
+    private final long checkpointBytes;
+    private final ScheduledExecutorService flusher;
+    private final Object writeLock;
+    private ByteArrayOutputStream pending;
+    private long size;
+    private IOException failure;
+
+    /**
+     * MutationLog Constructor. Opens the log for appending after its last complete record
+     * @param path Path of log file
+     * @param syncIntervalMillis Time between syncs of collected records, zero syncs each record
+     * @param checkpointBytes Size of log that needsCheckpoint returns true after it
+     * @throws IOException if the log cannot be opened
+     */
+    public MutationLog(String path, long syncIntervalMillis, long checkpointBytes) throws IOException {
+        if (syncIntervalMillis < 0) throw new IllegalArgumentException("Sync interval cannot be negative!");
+        this.channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.size = validLength(channel);
+        channel.truncate(size);
+        channel.position(size);
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.checkpointBytes = checkpointBytes;
+        this.writeLock = new Object();
+        this.pending = new ByteArrayOutputStream();
+        if (syncIntervalMillis == 0) {
+            this.flusher = null;
+        } else {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                var thread = new Thread(r, "mutation-log-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //-------------------------------------Records-----------------------------------------
+
+    public void addNode(String id, String label, String type) {
+        append(ADD_NODE, id, label, type);
+    }
+
+    public void removeNode(String id) {
+        append(REMOVE_NODE, id);
+    }
+
+    public void addEdge(String from, String to, String type) {
+        append(ADD_EDGE, from, to, type);
+    }
+
+    public void removeEdge(String from, String to, String type) {
+        append(REMOVE_EDGE, from, to, type);
+    }
+
+    /**
+     * Records a feature that is added to features of MainController
+     * @param id Id of feature
+     * @param type Type of feature
+     * @param label Label of feature
+     */
+    public void defineFeature(int id, FeatureType type, String label) {
+        append(DEFINE_FEATURE, String.valueOf(id), type.name(), label);
+    }
+
+    public void addFeature(String nodeID, int featureID) {
+        append(ADD_FEATURE, nodeID, String.valueOf(featureID));
+    }
+
+    public void removeFeature(String nodeID, int featureID) {
+        append(REMOVE_FEATURE, nodeID, String.valueOf(featureID));
+    }
+
+    /**
+     * Records a feature that is removed from all nodes and from features of MainController
+     * @param featureID Id of feature
+     */
+    public void removeFeatureFromAllNodes(int featureID) {
+        append(REMOVE_FEATURE_FROM_ALL_NODES, String.valueOf(featureID));
+    }
+
+    /**
+     * Adds a record to the records that are written on next sync
+     * @param operation Code of operation
+     * @param arguments Arguments of operation
+     * @throws IllegalStateException if a previous sync failed
+     */
+    private void append(byte operation, String... arguments) {
+        var data = new ByteArrayOutputStream();
+        try (var out = new DataOutputStream(data)) {
+            out.writeByte(operation);
+            for (var argument : arguments) out.writeUTF(argument);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] payload = data.toByteArray();
+        var crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(payload.length).putInt((int) crc.getValue());
+        synchronized (this) {
+            if (failure != null) throw new IllegalStateException("Mutation log cannot be written! " + failure.getMessage());
+            pending.write(header.array(), 0, HEADER_SIZE);
+            pending.write(payload, 0, payload.length);
+        }
+        if (syncIntervalMillis == 0) syncQuietly();
+    }
+
+    //-------------------------------------Sync and checkpoint-----------------------------
+
+    /**
+     * Writes collected records and forces them to disk
+     * @throws IOException if the records cannot be written
+     */
+    public void sync() throws IOException {
+        synchronized (writeLock) {
+            ByteArrayOutputStream batch;
+            synchronized (this) {
+                if (pending.size() == 0) return;
+                batch = pending;
+                pending = new ByteArrayOutputStream();
+            }
+            var buffer = ByteBuffer.wrap(batch.toByteArray());
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(false);
+            synchronized (this) {
+                size += batch.size();
+            }
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * Return true if the log is bigger than its checkpoint size
+     * @return true if a checkpoint should be taken
+     */
+    public synchronized boolean needsCheckpoint() {
+        return size + pending.size() >= checkpointBytes;
+    }
+
+    public synchronized long size() {
+        return size + pending.size();
+    }
+
+    /**
+     * Saves the graph with given action and then truncates the log. The caller must not change the graph
+     * until this method returns. If the action fails the log is kept
+     * @param save Action that saves the graph durably
+     * @throws IOException if the graph cannot be saved or the log cannot be truncated
+     */
+    public void checkpoint(Checkpoint save) throws IOException {
+        synchronized (writeLock) {
+            sync();
+            save.save();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            synchronized (this) {
+                size = 0;
+            }
+        }
+    }
+
+    /**
+     * Syncs the collected records and closes the log
+     * @throws IOException if the records cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) flusher.shutdown();
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Action that saves a graph durably, for example by writing a snapshot
+     */
+    public interface Checkpoint {
+        void save() throws IOException;
+    }
+
+    //-------------------------------------Replay------------------------------------------
+
+    /**
+     * Applies records of a log to given graph and features of MainController. Records that cannot be
+     * applied are rejected, and a partly written record at the end of the log is ignored
+     * @param graph Graph that is loaded from the last snapshot
+     * @param path Path of log file
+     * @return Report of replay, rows are records
+     * @throws IOException if the log cannot be read
+     */
+    public static LoadReport replay(Graph graph, String path) throws IOException {
+        LoadReport report = new LoadReport(path);
+        long begin = System.nanoTime();
+        if (!Files.exists(Path.of(path))) return report;
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            byte[] header = new byte[HEADER_SIZE];
+            while (true) {
+                byte[] payload = readRecord(in, header);
+                if (payload == null) break;
+                report.addRows(1);
+                try {
+                    apply(graph, new DataInputStream(new ByteArrayInputStream(payload)));
+                } catch (ExistElementException | RuntimeException e) {
+                    report.reject(describe(payload), e.getMessage());
+                }
+            }
+        }
+        report.setNanos(System.nanoTime() - begin);
+        return report;
+    }
+
+    private static void apply(Graph graph, DataInputStream in) throws IOException, ExistElementException {
+        switch (in.readByte()) {
+            case ADD_NODE -> graph.addNode(in.readUTF(), in.readUTF(), in.readUTF());
+            case REMOVE_NODE -> graph.removeNode(in.readUTF());
+            case ADD_EDGE -> graph.addEdge(in.readUTF(), in.readUTF(), in.readUTF());
+            case REMOVE_EDGE -> graph.removeEdge(in.readUTF(), in.readUTF(), in.readUTF());
+            case DEFINE_FEATURE -> MainController.addFeature(Integer.parseInt(in.readUTF()),
+                    FeatureType.valueOf(in.readUTF()), in.readUTF());
+            case ADD_FEATURE -> graph.addFeature(in.readUTF(), Integer.parseInt(in.readUTF()));
+            case REMOVE_FEATURE -> graph.removeFeature(in.readUTF(), Integer.parseInt(in.readUTF()));
+            case REMOVE_FEATURE_FROM_ALL_NODES -> {
+                int featureID = Integer.parseInt(in.readUTF());
+                graph.removeFeatureFromAllNodes(featureID);
+                MainController.features.remove(featureID);
+            }
+            default -> throw new IllegalStateException("Unknown record!");
+        }
+    }
+
+    /**
+     * Reads next record and checks its CRC
+     * @return Data of record or null at the end of log or at a partly written record
+     */
+    private static byte[] readRecord(DataInputStream in, byte[] header) throws IOException {
+        if (in.readNBytes(header, 0, HEADER_SIZE) < HEADER_SIZE) return null;
+        var buffer = ByteBuffer.wrap(header);
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length <= 0 || length > MAX_RECORD_SIZE) return null;
+        byte[] payload = in.readNBytes(length);
+        if (payload.length < length) return null;
+        var crc = new CRC32();
+        crc.update(payload);
+        return ((int) crc.getValue() == checksum) ? payload : null;
+    }
+
+    /**
+     * Gives length of the complete records at the start of the log
+     */
+    private static long validLength(FileChannel channel) throws IOException {
+        channel.position(0);
+        var in = new DataInputStream(new BufferedInputStream(java.nio.channels.Channels.newInputStream(channel)));
+        byte[] header = new byte[HEADER_SIZE];
+        long length = 0;
+        byte[] payload;
+        while ((payload = readRecord(in, header)) != null) length += HEADER_SIZE + payload.length;
+        return length;
+    }
+
+    private static String describe(byte[] payload) {
+        var in = new DataInputStream(new ByteArrayInputStream(payload));
+        StringBuilder builder = new StringBuilder();
+        try {
+            builder.append(in.readByte());
+            while (in.available() > 0) builder.append(',').append(in.readUTF());
+        } catch (IOException ignored) {
+        }
+        return builder.toString();
+    }
+}
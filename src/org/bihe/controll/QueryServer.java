@@ -0,0 +1,292 @@
+package org.bihe.controll;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bihe.bean.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Answers queries of a graph over HTTP on the loopback address. Each query is a GET request and its answer
+ * is a JSON object:
+ * <pre>
+ * /top?of=followers|likes|hashtags|mentions&amp;k=3   labels of top items
+ * /suggestion?user=u1&amp;type=user|post                label of suggested item, null if there is none
+ * /recommend?user=u1&amp;type=user|post&amp;n=10            suggested items with scores
+ * /friends?user=u1                                 ids of friends
+ * /path?from=u1&amp;to=u2                              ids of nodes of a shortest path
+ * /density                                         densities in percent
+ * /components                                      number of connected graphs and size of biggest one
+ * /centrality?user=u1                              betweenness centrality
+ * /metrics                                         gauges and latency histograms of GraphMetrics
+ * </pre>
+ * Bad parameters and unknown nodes are answered with status 400 or 404 and an error message. Numbers of
+ * items (k and n) are at most MAX_ITEMS.
+ * <p>
+ * Requests are run by a pool of threads, so the graph must be a ConcurrentGraph. Queries of the graph take
+ * its read locks, so they run in parallel. Java 17 has no virtual threads, so the pool has a fixed number
+ * of platform threads
+ */
+public class QueryServer implements Closeable {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int MAX_ITEMS = 1000;
+    private static final int BACKLOG = 1024;
+
+    static {
+        // headers and body of an answer are written separately, so without TCP_NODELAY each answer on a kept
+        // alive connection waits for the delayed ACK of the client (about 40 ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Graph graph;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * QueryServer Constructor. The server is started by start
+     * @param graph Graph that is queried, its queries are timed if GraphMetrics is on
+     * @param port Port on loopback address, zero for a free port
+     * @param threads Number of threads that run requests
+     * @throws IOException if the port cannot be bound
+     */
+    public QueryServer(ConcurrentGraph graph, int port, int threads) throws IOException {
+        if (threads < 1) throw new IllegalArgumentException("Number of threads must be positive!");
+        this.graph = GraphMetrics.instrument(graph);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        var number = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            var thread = new Thread(r, "query-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        route("/top", this::top);
+        route("/suggestion", this::suggestion);
+        route("/recommend", this::recommend);
+        route("/friends", this::friends);
+        route("/path", this::path);
+        route("/density", this::density);
+        route("/components", this::components);
+        route("/centrality", this::centrality);
+        route("/metrics", parameters -> GraphMetrics.toJson(graph));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Gives URL of server that paths of queries are appended to
+     * @return URL without a slash at the end
+     */
+    public String getURL() {
+        var address = server.getAddress().getAddress();
+        String host = (address instanceof Inet6Address) ? "[" + address.getHostAddress() + "]" : address.getHostAddress();
+        return "http://" + host + ":" + getPort();
+    }
+
+    /**
+     * Stops accepting requests, waits a second for running requests and stops the threads
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //-------------------------------------Queries-----------------------------------------
+
+    private String top(Map<String, String> parameters) {
+        int k = countParameter(parameters, "k", MainController.TOP_ITEMS);
+        String of = parameter(parameters, "of");
+        String[] items = switch (of) {
+            case "followers" -> graph.topFollowersOrLikes(NodeType.user, EdgeType.follow, k);
+            case "likes" -> graph.topFollowersOrLikes(NodeType.post, EdgeType.like, k);
+            case "hashtags" -> graph.topHashtagsOrMentions(FeatureType.HASHTAG, k);
+            case "mentions" -> graph.topHashtagsOrMentions(FeatureType.MENTION, k);
+            default -> throw new IllegalArgumentException("of must be followers, likes, hashtags or mentions!");
+        };
+        return "{\"of\":" + quote(of) + ",\"items\":" + array(Arrays.asList(items)) + "}";
+    }
+
+    private String suggestion(Map<String, String> parameters) {
+        String user = parameter(parameters, "user");
+        var type = suggestionType(parameters);
+        return "{\"user\":" + quote(user) + ",\"type\":" + quote(type.name()) + ",\"item\":"
+                + quote(graph.suggestedItem(user, type)) + "}";
+    }
+
+    private String recommend(Map<String, String> parameters) {
+        String user = parameter(parameters, "user");
+        var type = suggestionType(parameters);
+        int n = countParameter(parameters, "n", 10);
+        StringBuilder builder = new StringBuilder("{\"user\":").append(quote(user)).append(",\"items\":[");
+        String separator = "";
+        for (var recommendation : graph.recommend(user, type, n)) {
+            builder.append(separator).append("{\"id\":").append(quote(recommendation.getNode().getId()))
+                    .append(",\"score\":").append(recommendation.getScore()).append('}');
+            separator = ",";
+        }
+        return builder.append("]}").toString();
+    }
+
+    private String friends(Map<String, String> parameters) {
+        String user = parameter(parameters, "user");
+        return "{\"user\":" + quote(user) + ",\"friends\":" + array(graph.listOfFriends(user)) + "}";
+    }
+
+    private String path(Map<String, String> parameters) {
+        var path = graph.getShortestPath(parameter(parameters, "from"), parameter(parameters, "to"));
+        List<String> ids = new ArrayList<>();
+        if (path != null) for (var node : path) ids.add(node.getId());
+        return "{\"path\":" + array(ids) + "}";
+    }
+
+    private String density(Map<String, String> parameters) {
+        return "{\"users\":" + graph.densityOfUsersPercent()
+                + ",\"usersAndPosts\":" + graph.densityJustBetweenUsersAndPostsPercent()
+                + ",\"total\":" + graph.densityTotalBetweenUsersAndPostsPercent() + "}";
+    }
+
+    private String components(Map<String, String> parameters) {
+        return "{\"count\":" + graph.connectedGraphs().size()
+                + ",\"mostUsersSize\":" + graph.mostNumberOfUsersConnectedGraph().size() + "}";
+    }
+
+    private String centrality(Map<String, String> parameters) {
+        String user = parameter(parameters, "user");
+        return "{\"user\":" + quote(user) + ",\"betweenness\":" + graph.betweennessCentrality(user) + "}";
+    }
+
+    //-------------------------------------HTTP--------------------------------------------
+
+    private void route(String path, Function<Map<String, String>, String> query) {
+        server.createContext(path, exchange -> {
+            try (exchange) {
+                int status = 200;
+                String body;
+                if (!exchange.getRequestURI().getPath().equals(path)) {
+                    status = 404;
+                    body = error("Unknown path!");
+                } else if (!exchange.getRequestMethod().equals("GET")) {
+                    status = 405;
+                    body = error("Just GET is supported!");
+                } else {
+                    try {
+                        body = query.apply(parameters(exchange));
+                    } catch (NoSuchElementException e) {
+                        status = 404;
+                        body = error(e.getMessage());
+                    } catch (IllegalArgumentException | IllegalStateException e) {
+                        status = 400;
+                        body = error(e.getMessage());
+                    } catch (RuntimeException e) {
+                        System.err.println(exchange.getRequestURI() + ": " + e);
+                        status = 500;
+                        body = error("Internal error!");
+                    }
+                }
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                exchange.getResponseBody().write(bytes);
+            }
+        });
+    }
+
+    private static Map<String, String> parameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return parameters;
+        for (var pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals <= 0) continue;
+            parameters.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static String parameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) throw new IllegalArgumentException("Parameter " + name + " is required!");
+        return value;
+    }
+
+    /**
+     * Gives a number of items. It is limited, because arrays of this size are made for the answer
+     * @throws IllegalArgumentException if it is not a number between 0 and MAX_ITEMS
+     */
+    private static int countParameter(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) return defaultValue;
+        int count;
+        try {
+            count = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " must be a number!");
+        }
+        if (count < 0 || count > MAX_ITEMS)
+            throw new IllegalArgumentException("Parameter " + name + " must be between 0 and " + MAX_ITEMS + "!");
+        return count;
+    }
+
+    private static NodeType suggestionType(Map<String, String> parameters) {
+        String type = parameters.getOrDefault("type", NodeType.user.name());
+        if (!type.equals(NodeType.user.name()) && !type.equals(NodeType.post.name()))
+            throw new IllegalArgumentException("Parameter type must be user or post!");
+        return NodeType.valueOf(type);
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String array(Collection<String> items) {
+        StringBuilder builder = new StringBuilder("[");
+        String separator = "";
+        for (var item : items) {
+            builder.append(separator).append(quote(item));
+            separator = ",";
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * Gives a JSON string of given text
+     * @param text Text, can be null
+     * @return Quoted and escaped text, or null
+     */
+    static String quote(String text) {
+        if (text == null) return "null";
+        StringBuilder builder = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') builder.append('\\').append(c);
+            else if (c < 0x20) builder.append(String.format("\\u%04x", (int) c));
+            else builder.append(c);
+        }
+        return builder.append('"').toString();
+    }
+}
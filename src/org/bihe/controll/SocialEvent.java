@@ -0,0 +1,96 @@
+package org.bihe.controll;
+
+import org.bihe.bean.EdgeType;
+import org.bihe.bean.MutationBatch;
+import org.bihe.bean.NodeType;
+
+/**
+ * Event of a social network that changes the graph. In event files each event is one line:
+ * <pre>
+ * follow,userID,userID
+ * unfollow,userID,userID
+ * like,userID,postID
+ * comment,userID,postID
+ * post,postID,label
+ * hashtag,postID,featureID
+ * </pre>
+ * Events are partitioned by the post of like, comment, post and hashtag events and by the actor of follow
+ * and unfollow events, so the events that a post needs come after its creation in the same partition
+ */
+public class SocialEvent {
+    public enum Type {
+        FOLLOW, UNFOLLOW, LIKE, COMMENT, POST, HASHTAG
+    }
+
+    private final Type type;
+    private final String actor;
+    private final String target;
+
+    /**
+     * SocialEvent Constructor
+     * @param type Type of event
+     * @param actor Id of user that follows, likes or comments, or id of post that is created or gets a hashtag
+     * @param target Id of followed user or post, label of created post or id of hashtag
+     * @throws IllegalArgumentException if target of a hashtag event is not a number
+     */
+    public SocialEvent(Type type, String actor, String target) {
+        if (type == null || actor == null || target == null) throw new IllegalArgumentException("Event is not complete!");
+        if (type.equals(Type.HASHTAG)) Integer.parseInt(target);
+        this.type = type;
+        this.actor = actor;
+        this.target = target;
+    }
+
+    /**
+     * Parses a line of an event file
+     * @param line Line
+     * @return Event
+     * @throws IllegalArgumentException if the line is not a valid event
+     */
+    public static SocialEvent parse(String line) {
+        String[] data = line.split(",", 3);
+        if (data.length < 3) throw new IllegalArgumentException("Event must have type, actor and target!");
+        return new SocialEvent(Type.valueOf(data[0].trim().toUpperCase()), data[1].trim(), data[2].trim());
+    }
+
+    /**
+     * Adds the operation of this event to a batch
+     * @param batch Batch
+     * @return Index of operation in batch
+     */
+    int addTo(MutationBatch batch) {
+        return switch (type) {
+            case FOLLOW -> batch.addEdge(actor, target, EdgeType.follow);
+            case UNFOLLOW -> batch.removeEdge(actor, target, EdgeType.follow);
+            case LIKE -> batch.addEdge(actor, target, EdgeType.like);
+            case COMMENT -> batch.addEdge(actor, target, EdgeType.comment);
+            case POST -> batch.addNode(actor, target, NodeType.post);
+            case HASHTAG -> batch.addFeature(actor, Integer.parseInt(target));
+        };
+    }
+
+    /**
+     * Gives the id that this event is partitioned by: the post for events of a post, otherwise the actor
+     * @return Id of partition key
+     */
+    String partitionKey() {
+        return (type.equals(Type.LIKE) || type.equals(Type.COMMENT)) ? target : actor;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return type.name().toLowerCase() + "," + actor + "," + target;
+    }
+}
@@ -1,10 +1,25 @@
 package org.bihe.main;
 
 import org.bihe.controll.MainController;
+import org.bihe.controll.QueryServer;
+
+import java.io.IOException;
 
 public class Main {
 
-    public static void main(String[] args) {
-        MainController.mainMenu();
+    /**
+     * Starts the menu, or the query server if the first argument is --server. Port and number of threads
+     * of server can be given after it: --server [port] [threads]
+     * @param args Arguments
+     * @throws IOException if the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = (args.length > 1) ? Integer.parseInt(args[1]) : QueryServer.DEFAULT_PORT;
+            int threads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors() * 2;
+            MainController.serve(port, threads);
+        } else {
+            MainController.mainMenu();
+        }
     }
 }